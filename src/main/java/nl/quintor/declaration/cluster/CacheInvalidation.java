@@ -0,0 +1,22 @@
+package nl.quintor.declaration.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Keys to evict from a cache on every instance. Keys travel as strings, the receiver converts them back to the key
+ * type of the cache.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheInvalidation {
+    private String origin;
+    private String cacheName;
+    private List<String> keys;
+}
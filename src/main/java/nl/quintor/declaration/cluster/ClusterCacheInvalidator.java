@@ -0,0 +1,105 @@
+package nl.quintor.declaration.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.quintor.declaration.config.CacheConfig;
+import nl.quintor.declaration.service.DeclarationChangedEvent;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Evicts changed entries from the local caches and tells the other instances to do the same.
+ */
+@Slf4j
+@Component
+public class ClusterCacheInvalidator {
+
+    // How to turn the keys of an invalidation back into cache keys, caches not listed here aren't shared
+    private static final Map<String, Function<String, Object>> KEY_PARSERS = Map.of(
+            CacheConfig.DECLARATIONS, Long::valueOf,
+            CacheConfig.DECLARATIONS_BY_EMPLOYEE, key -> key,
+            CacheConfig.OWN_DECLARATIONS, key -> key,
+            CacheConfig.IMAGE_OWNERS, Long::valueOf);
+
+    private String nodeId = UUID.randomUUID().toString();
+    private CacheManager cacheManager;
+    private InvalidationTransport transport;
+    private ApplicationEventPublisher eventPublisher;
+
+    public ClusterCacheInvalidator(CacheManager cacheManager, InvalidationTransport transport,
+                                   ApplicationEventPublisher eventPublisher) {
+        this.cacheManager = cacheManager;
+        this.transport = transport;
+        this.eventPublisher = eventPublisher;
+        transport.subscribe(this::onInvalidation);
+    }
+
+    /**
+     * Evicts the declarations and the lists of the employees a committed write touched. Lookups of the owner before
+     * and after the write are evicted too, so a declaration that moved to another employee shows up for them.
+     */
+    @TransactionalEventListener
+    public void onDeclarationChanged(DeclarationChangedEvent event) {
+        var declarations = event.getChanges().stream()
+                .flatMap(change -> Arrays.asList(change.getBefore(), change.getAfter()).stream())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        invalidate(CacheConfig.DECLARATIONS, declarations.stream()
+                .map(declaration -> declaration.getId())
+                .collect(Collectors.toSet()));
+        invalidate(CacheConfig.OWN_DECLARATIONS, declarations.stream()
+                .filter(declaration -> declaration.getEmployee() != null)
+                .map(declaration -> CacheConfig.ownDeclarationKey(declaration.getId(), declaration.getEmployee()))
+                .collect(Collectors.toSet()));
+        invalidate(CacheConfig.DECLARATIONS_BY_EMPLOYEE, declarations.stream()
+                .map(declaration -> declaration.getEmployee())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+    }
+
+    /**
+     * Evicts the keys here right away and on the other instances shortly after.
+     */
+    public void invalidate(String cacheName, Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        var cache = cacheManager.getCache(cacheName);
+        keys.forEach(cache::evict);
+        transport.broadcast(CacheInvalidation.builder()
+                .origin(nodeId)
+                .cacheName(cacheName)
+                .keys(keys.stream().map(String::valueOf).collect(Collectors.toList()))
+                .build());
+    }
+
+    private void onInvalidation(CacheInvalidation invalidation) {
+        if (nodeId.equals(invalidation.getOrigin())) {
+            return;
+        }
+        var parser = KEY_PARSERS.get(invalidation.getCacheName());
+        var cache = cacheManager.getCache(invalidation.getCacheName());
+        if (parser == null || cache == null) {
+            log.debug("Ignoring invalidation of unknown cache {}", invalidation.getCacheName());
+            return;
+        }
+        invalidation.getKeys().forEach(key -> cache.evict(parser.apply(key)));
+
+        // Declarations are only invalidated once their change is committed, let local listeners know about it
+        if (CacheConfig.DECLARATIONS.equals(invalidation.getCacheName())) {
+            eventPublisher.publishEvent(new RemoteDeclarationsChangedEvent(invalidation.getKeys().stream()
+                    .map(Long::valueOf)
+                    .collect(Collectors.toList())));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package nl.quintor.declaration.cluster;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+
+/**
+ * Instances only share invalidations with {@code cluster.invalidation.transport=http}, which needs a shared secret.
+ * Without it every instance only evicts its own caches.
+ */
+@Configuration
+public class ClusterConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "cluster.invalidation.transport", havingValue = "http")
+    public HttpInvalidationTransport httpInvalidationTransport(DiscoveryClient discoveryClient,
+                                                               RestTemplateBuilder restTemplateBuilder,
+                                                               @Value("${spring.application.name}") String serviceId,
+                                                               @Value("${cluster.invalidation.secret:}") String secret,
+                                                               @Value("${cluster.invalidation.timeout:2s}") Duration timeout) {
+        if (!StringUtils.hasText(secret)) {
+            throw new IllegalStateException("cluster.invalidation.transport=http needs a shared secret, "
+                    + "set CLUSTER_SECRET (cluster.invalidation.secret) to the same value on every instance");
+        }
+        var restTemplate = restTemplateBuilder
+                .setConnectTimeout(timeout)
+                .setReadTimeout(timeout)
+                .build();
+        return new HttpInvalidationTransport(discoveryClient, serviceId, secret, restTemplate);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cluster.invalidation.transport", havingValue = "http")
+    public HttpInvalidationEndpoint httpInvalidationEndpoint(HttpInvalidationTransport transport) {
+        return new HttpInvalidationEndpoint(transport);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cluster.invalidation.transport", havingValue = "loopback", matchIfMissing = true)
+    public LoopbackInvalidationTransport loopbackInvalidationTransport() {
+        return new LoopbackInvalidationTransport();
+    }
+}
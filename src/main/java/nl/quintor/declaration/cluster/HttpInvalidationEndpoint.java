@@ -0,0 +1,31 @@
+package nl.quintor.declaration.cluster;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Receives invalidations from peers. Only registered (by {@link ClusterConfig}) when the HTTP transport is used,
+ * so it deliberately isn't a {@code @RestController}.
+ */
+@RequestMapping
+@ResponseBody
+public class HttpInvalidationEndpoint {
+
+    private HttpInvalidationTransport transport;
+
+    public HttpInvalidationEndpoint(HttpInvalidationTransport transport) {
+        this.transport = transport;
+    }
+
+    @PostMapping(HttpInvalidationTransport.PATH)
+    public ResponseEntity<Void> receive(@RequestBody CacheInvalidation invalidation,
+                                        @RequestHeader(value = HttpInvalidationTransport.SECRET_HEADER, required = false) String secret) {
+        var status = transport.receive(invalidation, secret) ? HttpStatus.NO_CONTENT : HttpStatus.FORBIDDEN;
+        return ResponseEntity.status(status).build();
+    }
+}
@@ -0,0 +1,85 @@
+package nl.quintor.declaration.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Posts invalidations to every instance of the service registered in Eureka, including this one. Peers accept
+ * them on {@link #PATH} when they carry the shared secret. Sending happens on a background thread with a bounded
+ * backlog, when the backlog is full the oldest invalidations are dropped.
+ */
+@Slf4j
+public class HttpInvalidationTransport implements InvalidationTransport {
+
+    public static final String PATH = "/internal/cache-invalidations";
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private static final int BACKLOG = 1000;
+
+    private DiscoveryClient discoveryClient;
+    private String serviceId;
+    private byte[] secret;
+    private RestTemplate restTemplate;
+    private ThreadPoolExecutor sender = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(BACKLOG), new ThreadPoolExecutor.DiscardOldestPolicy());
+    private List<Consumer<CacheInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+
+    public HttpInvalidationTransport(DiscoveryClient discoveryClient, String serviceId, String secret,
+                                     RestTemplate restTemplate) {
+        this.discoveryClient = discoveryClient;
+        this.serviceId = serviceId;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public void broadcast(CacheInvalidation invalidation) {
+        sender.execute(() -> {
+            var headers = new HttpHeaders();
+            headers.set(SECRET_HEADER, new String(secret, StandardCharsets.UTF_8));
+            var request = new HttpEntity<>(invalidation, headers);
+            for (var peer : discoveryClient.getInstances(serviceId)) {
+                try {
+                    restTemplate.postForEntity(peer.getUri().resolve(PATH), request, Void.class);
+                } catch (RestClientException e) {
+                    log.warn("Can't send cache invalidation to {}: {}", peer.getUri(), e.getMessage());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Hands an invalidation received from a peer to the subscribers.
+     *
+     * @return {@code false} when the secret is wrong and the invalidation was ignored
+     */
+    public boolean receive(CacheInvalidation invalidation, String secret) {
+        if (secret == null || !MessageDigest.isEqual(this.secret, secret.getBytes(StandardCharsets.UTF_8))) {
+            return false;
+        }
+        subscribers.forEach(subscriber -> subscriber.accept(invalidation));
+        return true;
+    }
+
+    public void shutdown() {
+        sender.shutdown();
+    }
+}
@@ -0,0 +1,17 @@
+package nl.quintor.declaration.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Delivers cache invalidations to all instances of the service. Delivery is best effort, cache TTLs bound how
+ * long a lost invalidation can keep a stale entry alive.
+ */
+public interface InvalidationTransport {
+
+    /**
+     * Sends the invalidation to all instances, possibly including this one. Must not block the caller on the network.
+     */
+    void broadcast(CacheInvalidation invalidation);
+
+    void subscribe(Consumer<CacheInvalidation> subscriber);
+}
@@ -0,0 +1,24 @@
+package nl.quintor.declaration.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers invalidations to the subscribers in this JVM, synchronously. Several subscribers sharing one transport
+ * behave like a cluster, which is what tests need.
+ */
+public class LoopbackInvalidationTransport implements InvalidationTransport {
+
+    private List<Consumer<CacheInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void broadcast(CacheInvalidation invalidation) {
+        subscribers.forEach(subscriber -> subscriber.accept(invalidation));
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+}
@@ -0,0 +1,18 @@
+package nl.quintor.declaration.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Published when another instance committed changes to these declarations. Only the ids are known, the current
+ * declarations have to be loaded.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class RemoteDeclarationsChangedEvent {
+    private final List<Long> ids;
+}
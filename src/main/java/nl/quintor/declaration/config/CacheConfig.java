@@ -0,0 +1,64 @@
+package nl.quintor.declaration.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String IMAGE_OWNERS = "imageOwners";
+    public static final String DECLARATIONS = "declarations";
+    public static final String DECLARATIONS_BY_EMPLOYEE = "declarationsByEmployee";
+    public static final String OWN_DECLARATIONS = "ownDeclarations";
+
+    /**
+     * Key of a declaration in {@link #OWN_DECLARATIONS}, which holds what an employee finds when looking up an id.
+     */
+    public static String ownDeclarationKey(long id, String employee) {
+        return id + ":" + employee;
+    }
+
+    @Bean
+    public CacheManager cacheManager(@Value("${cache.image-owners.maximum-size:100000}") long imageOwnersSize,
+                                     @Value("${cache.declarations.maximum-size:100000}") long declarationsSize,
+                                     @Value("${cache.declarations.ttl:10m}") Duration declarationsTtl,
+                                     @Value("${cache.declarations-by-employee.maximum-size:10000}") long declarationsByEmployeeSize,
+                                     @Value("${cache.declarations-by-employee.ttl:5m}") Duration declarationsByEmployeeTtl) {
+        var cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(List.of(
+                // Owners never change after upload, so they only need a size bound
+                new CaffeineCache(IMAGE_OWNERS, Caffeine.newBuilder()
+                        .maximumSize(imageOwnersSize)
+                        .recordStats()
+                        .build()),
+                // Declarations are evicted after every committed write, the TTL bounds what other instances see
+                new CaffeineCache(DECLARATIONS, Caffeine.newBuilder()
+                        .maximumSize(declarationsSize)
+                        .expireAfterWrite(declarationsTtl)
+                        .recordStats()
+                        .build()),
+                // Lookups of employees, scoped to their own declarations, are evicted like the declarations
+                new CaffeineCache(OWN_DECLARATIONS, Caffeine.newBuilder()
+                        .maximumSize(declarationsSize)
+                        .expireAfterWrite(declarationsTtl)
+                        .recordStats()
+                        .build()),
+                new CaffeineCache(DECLARATIONS_BY_EMPLOYEE, Caffeine.newBuilder()
+                        .maximumSize(declarationsByEmployeeSize)
+                        .expireAfterWrite(declarationsByEmployeeTtl)
+                        .recordStats()
+                        .build())
+        ));
+        return cacheManager;
+    }
+}
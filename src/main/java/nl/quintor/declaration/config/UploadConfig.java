@@ -0,0 +1,29 @@
+package nl.quintor.declaration.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.MultipartConfigFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import javax.servlet.MultipartConfigElement;
+
+/**
+ * Derives the multipart limits of the container from {@code image.upload.max-size}, so there is a single setting.
+ * Parts are spooled to disk by the container and streamed to the blob store from there.
+ */
+@Configuration
+public class UploadConfig {
+
+    // Room for the form fields next to the file
+    private static final DataSize FORM_FIELDS = DataSize.ofMegabytes(1);
+
+    @Bean
+    public MultipartConfigElement multipartConfigElement(@Value("${image.upload.max-size:20MB}") DataSize maxUploadSize) {
+        var factory = new MultipartConfigFactory();
+        factory.setFileSizeThreshold(DataSize.ofBytes(0));
+        factory.setMaxFileSize(maxUploadSize);
+        factory.setMaxRequestSize(DataSize.ofBytes(maxUploadSize.toBytes() + FORM_FIELDS.toBytes()));
+        return factory.createMultipartConfig();
+    }
+}
@@ -1,42 +1,191 @@
 package nl.quintor.declaration.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.quintor.declaration.export.ExportFormat;
+import nl.quintor.declaration.feed.DeclarationFeed;
+import nl.quintor.declaration.model.ApprovalRequest;
+import nl.quintor.declaration.model.ApprovalResult;
+import nl.quintor.declaration.model.BatchItemResult;
 import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.model.DeclarationDelta;
+import nl.quintor.declaration.model.DeclarationFilter;
+import nl.quintor.declaration.model.DeclarationPage;
+import nl.quintor.declaration.model.DeclarationSummary;
+import nl.quintor.declaration.model.ExpandedDeclaration;
+import nl.quintor.declaration.model.SummaryDimension;
+import nl.quintor.declaration.security.accessLayers.IsManagerOrAssistantManager;
 import nl.quintor.declaration.security.accessLayers.IsManagerOrAssistantManagerOrDeclarationEmployeeIsUser;
 import nl.quintor.declaration.security.accessLayers.IsManagerOrAssistantManagerOrEmployeeIsUser;
-import nl.quintor.declaration.security.accessLayers.IsManagerOrAssistantManagerOrIdMatchesDeclarationWhereUserIsOwner;
 import nl.quintor.declaration.service.DeclarationService;
+import nl.quintor.declaration.service.DeclarationSummaryService;
+import nl.quintor.declaration.service.DeclarationSyncService;
+import nl.quintor.declaration.service.GroupCommitWriter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.access.prepost.PostAuthorize;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.annotation.security.PermitAll;
 import javax.persistence.EntityNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/")
 public class DeclarationController {
 
+    private static final int EXPORT_FLUSH_INTERVAL = 100;
+
     private DeclarationService declarationService;
+    private DeclarationSummaryService declarationSummaryService;
+    private DeclarationSyncService declarationSyncService;
+    private GroupCommitWriter groupCommitWriter;
+    private DeclarationFeed declarationFeed;
+    private ObjectMapper objectMapper;
 
-    public DeclarationController(DeclarationService declarationService) {
+    public DeclarationController(DeclarationService declarationService,
+                                 DeclarationSummaryService declarationSummaryService,
+                                 DeclarationSyncService declarationSyncService,
+                                 GroupCommitWriter groupCommitWriter,
+                                 DeclarationFeed declarationFeed,
+                                 ObjectMapper objectMapper) {
         this.declarationService = declarationService;
+        this.declarationSummaryService = declarationSummaryService;
+        this.declarationSyncService = declarationSyncService;
+        this.groupCommitWriter = groupCommitWriter;
+        this.declarationFeed = declarationFeed;
+        this.objectMapper = objectMapper;
     }
 
+    /**
+     * Answered with 304 Not Modified when the ETag the client sends as If-None-Match is still current.
+     */
     @GetMapping
     @IsManagerOrAssistantManagerOrEmployeeIsUser
-    public List<Declaration> getAll(@RequestParam(value = "employee", required = false) String employee) {
+    public List<Declaration> getAll(@RequestParam(value = "employee", required = false) String employee, WebRequest request) {
+        if (request.checkNotModified(declarationSyncService.versionOf(employee))) {
+            return null;
+        }
         return Optional.ofNullable(employee).map(declarationService::findAllByEmployee)
                 .orElse(declarationService.findAll());
     }
 
+    /**
+     * The declarations with the metadata of their receipts embedded as {@code image}.
+     */
+    @GetMapping(params = "expand=image")
+    @IsManagerOrAssistantManagerOrEmployeeIsUser
+    public List<ExpandedDeclaration> getAllExpanded(@RequestParam(value = "employee", required = false) String employee) {
+        return declarationService.findAllExpanded(employee);
+    }
+
+    @GetMapping("/page")
+    @IsManagerOrAssistantManagerOrEmployeeIsUser
+    public DeclarationPage getPage(@RequestParam(value = "employee", required = false) String employee,
+                                   @RequestParam(value = "instanceId", required = false) String instanceId,
+                                   @RequestParam(value = "approvedLocal", required = false) Boolean approvedLocal,
+                                   @RequestParam(value = "approvedGlobal", required = false) Boolean approvedGlobal,
+                                   @RequestParam(value = "cursor", required = false) String cursor,
+                                   @RequestParam(value = "size", required = false) Integer size) {
+        var filter = DeclarationFilter.builder()
+                .employee(employee)
+                .instanceId(instanceId)
+                .approvedLocal(approvedLocal)
+                .approvedGlobal(approvedGlobal)
+                .build();
+        return declarationService.findPage(filter, cursor, size);
+    }
+
+    /**
+     * The declarations changed since the cursor of the previous sync and the ids of the ones that left the list.
+     * Without {@code since} all declarations are returned, a 410 means the cursor expired and the list has to be
+     * reloaded that way.
+     */
+    @GetMapping("/changes")
+    @IsManagerOrAssistantManagerOrEmployeeIsUser
+    public DeclarationDelta getChanges(@RequestParam(value = "employee", required = false) String employee,
+                                       @RequestParam(value = "since", required = false) String since) {
+        return declarationSyncService.findChanges(employee, since);
+    }
+
+    /**
+     * Server-Sent Events of committed creates, updates and approvals of the employee and/or instance, instead of
+     * polling {@code GET /}.
+     */
+    @GetMapping(value = "/feed", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @IsManagerOrAssistantManagerOrEmployeeIsUser
+    public SseEmitter feed(@RequestParam(value = "employee", required = false) String employee,
+                           @RequestParam(value = "instanceId", required = false) String instanceId) {
+        return declarationFeed.subscribe(employee, instanceId);
+    }
+
+    @GetMapping("/export")
+    @IsManagerOrAssistantManagerOrEmployeeIsUser
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(value = "employee", required = false) String employee,
+                                                        @RequestParam(value = "format", defaultValue = "ndjson") String format) {
+        var exportFormat = ExportFormat.fromParameter(format);
+
+        StreamingResponseBody body = outputStream -> {
+            try (var writer = exportFormat.createWriter(outputStream, objectMapper)) {
+                var rows = new int[1];
+                declarationService.forEach(employee, declaration -> {
+                    try {
+                        writer.write(declaration);
+                        if (++rows[0] % EXPORT_FLUSH_INTERVAL == 0) {
+                            writer.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(exportFormat.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"declarations." + exportFormat.getExtension() + "\"")
+                .body(body);
+    }
+
+    /**
+     * Totals per employee or per instance ({@code by=employee|instance}).
+     */
+    @GetMapping("/summary")
+    @IsManagerOrAssistantManager
+    public List<DeclarationSummary> getSummary(@RequestParam(value = "by", defaultValue = "employee") String by) {
+        var dimension = Arrays.stream(SummaryDimension.values())
+                .filter(value -> value.name().equalsIgnoreCase(by))
+                .findFirst()
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Can't summarize by " + by));
+        return declarationSummaryService.findAll(dimension);
+    }
+
     @GetMapping("/{id}")
-    @IsManagerOrAssistantManagerOrIdMatchesDeclarationWhereUserIsOwner
-    public Declaration findById(@PathVariable final long id) {
-        return declarationService.findById(id)
+    public Declaration findById(@PathVariable final long id, Authentication authentication) {
+        return declarationService.findVisibleById(id, authentication)
+                .orElseThrow(() -> new EntityNotFoundException("Can't find declaration for given Id"));
+    }
+
+    /**
+     * Like {@link #findById}, employees only find their own declarations.
+     */
+    @GetMapping(value = "/{id}", params = "expand=image")
+    public ExpandedDeclaration findExpandedById(@PathVariable final long id, Authentication authentication) {
+        return declarationService.findVisibleExpandedById(id, authentication)
                 .orElseThrow(() -> new EntityNotFoundException("Can't find declaration for given Id"));
     }
 
@@ -46,10 +195,40 @@ public class DeclarationController {
         return declarationService.save(declaration);
     }
 
+    /**
+     * Answered once the declaration is committed, which can be together with other creates when group commit is
+     * enabled.
+     */
     @PostMapping
     @IsManagerOrAssistantManagerOrDeclarationEmployeeIsUser
-    public Declaration create(@RequestBody final Declaration declaration) {
-        return declarationService.save(declaration);
+    public CompletableFuture<Declaration> create(@RequestBody final Declaration declaration) {
+        return groupCommitWriter.create(declaration);
+    }
+
+    /**
+     * JSON merge patch of a single declaration, the patch has to contain the version it is based on.
+     * Responds with the new version as ETag.
+     */
+    @PatchMapping(value = "/{id}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Void> patch(@PathVariable final long id, @RequestBody final JsonNode patch, Authentication authentication) {
+        var version = declarationService.patch(id, patch, authentication);
+        return ResponseEntity.noContent().eTag(Long.toString(version)).build();
+    }
+
+    @PutMapping("/batch")
+    public List<BatchItemResult> updateAll(@RequestBody final List<Declaration> declarations, Authentication authentication) {
+        return declarationService.updateAll(declarations, authentication);
+    }
+
+    @PostMapping("/batch")
+    public List<BatchItemResult> createAll(@RequestBody final List<Declaration> declarations, Authentication authentication) {
+        return declarationService.createAll(declarations, authentication);
+    }
+
+    @PostMapping("/approve")
+    @IsManagerOrAssistantManager
+    public ApprovalResult approve(@RequestBody final ApprovalRequest request) {
+        return declarationService.approve(request);
     }
 
 }
@@ -3,22 +3,38 @@ package nl.quintor.declaration.controller;
 import nl.quintor.declaration.model.Image;
 import nl.quintor.declaration.security.accessLayers.IsEmployee;
 import nl.quintor.declaration.service.ImageService;
+import nl.quintor.declaration.service.ImageVariantService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.annotation.security.PermitAll;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/image")
 public class ImageController {
 
+    /**
+     * Receipts never change after upload, so clients may keep them as long as they like.
+     */
+    private static final String IMMUTABLE = "private, max-age=31536000, immutable";
+
     private ImageService imageService;
+    private ImageVariantService imageVariantService;
 
-    public ImageController(ImageService imageService) {
+    public ImageController(ImageService imageService, ImageVariantService imageVariantService) {
         this.imageService = imageService;
+        this.imageVariantService = imageVariantService;
     }
 
     @PostMapping
@@ -27,12 +43,76 @@ public class ImageController {
         return imageService.save(image).getId();
     }
 
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @IsEmployee
+    public long upload(@RequestParam("file") MultipartFile file,
+                       @RequestParam(value = "name", required = false) String name,
+                       @RequestParam(value = "instanceId", required = false) String instanceId,
+                       Authentication authentication) throws IOException {
+        var image = Image.builder()
+                .employee(authentication.getName())
+                .name(Optional.ofNullable(name).orElse(file.getOriginalFilename()))
+                .fileName(file.getOriginalFilename())
+                .instanceId(instanceId)
+                .build();
+
+        try (var content = file.getInputStream()) {
+            return imageService.save(image, content).getId();
+        }
+    }
+
     @PermitAll
     @PreAuthorize("@securityHelperFunctions.isOwnerOfImage(#id, principal) or hasAnyRole('ROLE_MANAGER', 'ROLE_ASSISTANT_MANAGER')")
-    @GetMapping(value = "/{id}", produces = MediaType.IMAGE_JPEG_VALUE)
-    public byte[] findImage(@PathVariable long id) {
-        return imageService.findById(id)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Can't find image"))
-                .getFile();
+    @GetMapping("/{id}")
+    public ResponseEntity<StreamingResponseBody> findImage(@PathVariable long id,
+                                                           @RequestParam(value = "w", required = false) Integer width,
+                                                           @RequestHeader HttpHeaders headers) {
+        var image = imageService.findById(id)
+                .filter(i -> i.getContentKey() != null)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Can't find image"));
+
+        // The content key is the SHA-256 of the content, which makes it (and the keys derived from it) a strong validator
+        var etag = "\"" + (width == null ? image.getContentKey() : imageVariantService.variantKey(image, width)) + "\"";
+        if (anyMatches(headers.getIfNoneMatch(), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+                    .build();
+        }
+
+        // Once streaming starts the status is committed, a missing blob would only show as a truncated body
+        if (!imageService.hasContent(image)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Can't find image content");
+        }
+
+        ResponseEntity<StreamingResponseBody> response;
+        if (width == null) {
+            response = RangeRequests.respond(headers, etag, contentTypeOf(image), image.getSize(),
+                    (position, count, outputStream) -> imageService.transferContent(image, position, count, outputStream));
+        } else {
+            var variant = imageVariantService.findVariant(image, width);
+            response = RangeRequests.respond(headers, etag, MediaType.parseMediaType(variant.getContentType()),
+                    variant.getContent().length,
+                    (position, count, outputStream) -> outputStream.write(variant.getContent(), (int) position, (int) count));
+        }
+
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .eTag(etag)
+                .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+                .body(response.getBody());
+    }
+
+    private static boolean anyMatches(List<String> ifNoneMatch, String etag) {
+        // If-None-Match uses the weak comparison, so a W/ prefix doesn't matter
+        return ifNoneMatch.stream()
+                .map(candidate -> candidate.startsWith("W/") ? candidate.substring(2) : candidate)
+                .anyMatch(candidate -> candidate.equals("*") || candidate.equals(etag));
+    }
+
+    private static MediaType contentTypeOf(Image image) {
+        return Optional.ofNullable(image.getContentType())
+                .map(MediaType::parseMediaType)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
     }
 }
@@ -0,0 +1,152 @@
+package nl.quintor.declaration.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Answers {@code Range} requests (RFC 7233) for content of a known length, with a single part or
+ * {@code multipart/byteranges} response.
+ */
+final class RangeRequests {
+
+    private static final String BYTES = "bytes";
+    private static final int MAX_RANGES = 16;
+
+    @FunctionalInterface
+    interface ContentWriter {
+        void write(long position, long count, OutputStream outputStream) throws IOException;
+    }
+
+    private RangeRequests() {
+    }
+
+    /**
+     * Builds the response for the requested ranges, or the full content when there is no usable Range header.
+     * Validators and caching headers are left to the caller.
+     */
+    static ResponseEntity<StreamingResponseBody> respond(HttpHeaders requestHeaders, String etag, MediaType contentType,
+                                                         long length, ContentWriter content) {
+        var ranges = requestedRanges(requestHeaders, etag);
+        if (ranges.isEmpty()) {
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.ACCEPT_RANGES, BYTES)
+                    .contentType(contentType)
+                    .contentLength(length)
+                    .body(outputStream -> content.write(0, length, outputStream));
+        }
+
+        var regions = toRegions(ranges.get(), length);
+        if (regions.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.ACCEPT_RANGES, BYTES)
+                    .header(HttpHeaders.CONTENT_RANGE, BYTES + " */" + length)
+                    .build();
+        }
+        if (regions.get().size() == 1) {
+            var region = regions.get().get(0);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .header(HttpHeaders.ACCEPT_RANGES, BYTES)
+                    .header(HttpHeaders.CONTENT_RANGE, region.contentRange(length))
+                    .contentType(contentType)
+                    .contentLength(region.count)
+                    .body(outputStream -> content.write(region.position, region.count, outputStream));
+        }
+        return multipart(regions.get(), contentType, length, content);
+    }
+
+    /**
+     * The ranges to serve, empty when the full content should be sent: no (valid) Range header, or an
+     * If-Range that doesn't match the current entity tag.
+     */
+    private static Optional<List<HttpRange>> requestedRanges(HttpHeaders requestHeaders, String etag) {
+        var ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        // If-Range needs a strong match, a date never matches since we don't send Last-Modified
+        if (ifRange != null && !ifRange.equals(etag)) {
+            return Optional.empty();
+        }
+        try {
+            var ranges = requestHeaders.getRange();
+            return ranges.isEmpty() || ranges.size() > MAX_RANGES ? Optional.empty() : Optional.of(ranges);
+        } catch (IllegalArgumentException e) {
+            // A Range header we can't parse is ignored
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Resolves the ranges against the content length, dropping unsatisfiable ones. Empty when none is satisfiable.
+     */
+    private static Optional<List<Region>> toRegions(List<HttpRange> ranges, long length) {
+        var regions = new ArrayList<Region>();
+        for (var range : ranges) {
+            try {
+                var start = range.getRangeStart(length);
+                var end = range.getRangeEnd(length);
+                if (start < length && start <= end) {
+                    regions.add(new Region(start, end - start + 1));
+                }
+            } catch (IllegalArgumentException ignored) {
+                // Unsatisfiable range, e.g. a suffix range of zero bytes
+            }
+        }
+        return regions.isEmpty() ? Optional.empty() : Optional.of(regions);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> multipart(List<Region> regions, MediaType contentType,
+                                                                   long length, ContentWriter content) {
+        var boundary = new String(MimeTypeUtils.generateMultipartBoundary(), StandardCharsets.US_ASCII);
+
+        var partHeaders = new ArrayList<byte[]>();
+        var contentLength = 0L;
+        for (var region : regions) {
+            var partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + region.contentRange(length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + region.count;
+        }
+        var end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += end.length;
+
+        StreamingResponseBody body = outputStream -> {
+            for (int i = 0; i < regions.size(); i++) {
+                outputStream.write(partHeaders.get(i));
+                content.write(regions.get(i).position, regions.get(i).count, outputStream);
+            }
+            outputStream.write(end);
+        };
+
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .header(HttpHeaders.ACCEPT_RANGES, BYTES)
+                .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
+                .contentLength(contentLength)
+                .body(body);
+    }
+
+    private static final class Region {
+        private final long position;
+        private final long count;
+
+        private Region(long position, long count) {
+            this.position = position;
+            this.count = count;
+        }
+
+        private String contentRange(long length) {
+            return BYTES + " " + position + "-" + (position + count - 1) + "/" + length;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package nl.quintor.declaration.controller;
+
+import nl.quintor.declaration.reporting.CostGroup;
+import nl.quintor.declaration.reporting.CostHistogram;
+import nl.quintor.declaration.reporting.ReportFilter;
+import nl.quintor.declaration.reporting.ReportGrouping;
+import nl.quintor.declaration.reporting.ReportingService;
+import nl.quintor.declaration.security.accessLayers.IsManagerOrAssistantManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finance reports, served from an in-memory snapshot that can lag a few moments behind the database.
+ * Filters are bound from the query parameters named after the {@link ReportFilter} fields.
+ */
+@RestController
+@RequestMapping("/reporting")
+public class ReportingController {
+
+    private ReportingService reportingService;
+
+    public ReportingController(ReportingService reportingService) {
+        this.reportingService = reportingService;
+    }
+
+    @GetMapping("/costs")
+    @IsManagerOrAssistantManager
+    public List<CostGroup> getCosts(@ModelAttribute ReportFilter filter,
+                                    @RequestParam(value = "groupBy", defaultValue = "none") String groupBy) {
+        var grouping = Arrays.stream(ReportGrouping.values())
+                .filter(value -> value.name().equalsIgnoreCase(groupBy))
+                .findFirst()
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Can't group by " + groupBy));
+        return reportingService.costs(filter, grouping);
+    }
+
+    @GetMapping("/costs/histogram")
+    @IsManagerOrAssistantManager
+    public CostHistogram getCostHistogram(@ModelAttribute ReportFilter filter,
+                                          @RequestParam(value = "from", defaultValue = "0") double from,
+                                          @RequestParam(value = "bucketWidth") double bucketWidth,
+                                          @RequestParam(value = "buckets", defaultValue = "20") int buckets) {
+        return reportingService.histogram(filter, from, bucketWidth, buckets);
+    }
+}
@@ -0,0 +1,31 @@
+package nl.quintor.declaration.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Marks work whose read-only transactions have to read from the primary, like loads that fill a cache: a replica
+ * that lags behind would have them cache a row that was changed already. Read by {@link ReplicaRoutingDataSource}.
+ */
+public final class PrimaryReadContext {
+
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+    private PrimaryReadContext() {
+    }
+
+    public static boolean isActive() {
+        return ACTIVE.get() != null;
+    }
+
+    public static <T> T call(Supplier<T> work) {
+        if (isActive()) {
+            return work.get();
+        }
+        ACTIVE.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            ACTIVE.remove();
+        }
+    }
+}
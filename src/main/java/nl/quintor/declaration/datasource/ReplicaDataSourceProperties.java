@@ -0,0 +1,22 @@
+package nl.quintor.declaration.datasource;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ReplicaDataSourceProperties {
+    private List<Replica> replicas = new ArrayList<>();
+    // How long a user reads from the primary after writing
+    private Duration stickyWindow = Duration.ofSeconds(5);
+    private Duration maxReplicaLag = Duration.ofSeconds(5);
+
+    @Data
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+    }
+}
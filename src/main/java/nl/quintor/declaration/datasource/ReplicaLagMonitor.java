@@ -0,0 +1,64 @@
+package nl.quintor.declaration.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Measures replication lag with a heartbeat: the primary's {@code replication_heartbeat} row gets the current time,
+ * a replica's copy of the row shows how far behind it is. Replicas that lag too much or can't be queried are
+ * taken out of the rotation until they catch up.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private JdbcTemplate primary;
+    private Map<String, JdbcTemplate> replicas;
+    private ReplicaRoutingDataSource routingDataSource;
+    private long maxLagMillis;
+    private Clock clock;
+
+    public ReplicaLagMonitor(DataSource primary, Map<String, DataSource> replicas,
+                             ReplicaRoutingDataSource routingDataSource, Duration maxLag, Clock clock) {
+        this.primary = new JdbcTemplate(primary);
+        this.replicas = replicas.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> new JdbcTemplate(entry.getValue())));
+        this.routingDataSource = routingDataSource;
+        this.maxLagMillis = maxLag.toMillis();
+        this.clock = clock;
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.probe-interval:PT1S}")
+    public void probe() {
+        var now = clock.millis();
+        try {
+            if (primary.update("update replication_heartbeat set beat_at = ? where id = 1", now) == 0) {
+                primary.update("insert into replication_heartbeat (id, beat_at) values (1, ?)", now);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Can't write replication heartbeat: {}", e.getMessage());
+            return;
+        }
+
+        replicas.forEach((replica, jdbcTemplate) -> {
+            var healthy = false;
+            try {
+                var beats = jdbcTemplate.queryForList("select beat_at from replication_heartbeat where id = 1", Long.class);
+                healthy = !beats.isEmpty() && now - beats.get(0) <= maxLagMillis;
+            } catch (DataAccessException e) {
+                log.debug("Can't read replication heartbeat from {}: {}", replica, e.getMessage());
+            }
+            if (healthy != routingDataSource.isHealthy(replica)) {
+                log.warn("Replica {} is {}", replica, healthy ? "back in rotation" : "lagging or down, reading from the primary");
+            }
+            routingDataSource.setHealthy(replica, healthy);
+        });
+    }
+}
@@ -0,0 +1,109 @@
+package nl.quintor.declaration.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to a healthy replica, round robin, and everything else to the primary. A user who
+ * wrote something reads from the primary for a while after, so they see their own writes despite replication lag.
+ * Only works behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, which defers
+ * getting the connection until the transaction is marked read-only.
+ * <p>
+ * Who wrote recently is kept in memory, per instance, for the user authenticated on the writing thread. A user whose
+ * next request goes to another instance, or whose write ran on a thread without their authentication (group commit),
+ * isn't sticky and can read up to {@code datasource.max-replica-lag} old data. Reads that must not be stale run in
+ * {@link PrimaryReadContext}.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+
+    private Map<String, DataSource> replicaDataSources;
+    private List<String> replicas;
+    private Set<String> healthyReplicas = ConcurrentHashMap.newKeySet();
+    private AtomicInteger next = new AtomicInteger();
+    private Cache<String, Boolean> recentWriters;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Duration stickyWindow) {
+        var targets = new HashMap<Object, Object>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+
+        this.replicaDataSources = Map.copyOf(replicas);
+        this.replicas = List.copyOf(replicas.keySet());
+        this.healthyReplicas.addAll(replicas.keySet());
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(stickyWindow)
+                .maximumSize(100_000)
+                .build();
+    }
+
+    public Map<String, DataSource> getReplicaDataSources() {
+        return replicaDataSources;
+    }
+
+    /**
+     * Called by the lag probe, unhealthy replicas don't get reads until they are healthy again.
+     */
+    public void setHealthy(String replica, boolean healthy) {
+        if (healthy) {
+            healthyReplicas.add(replica);
+        } else {
+            healthyReplicas.remove(replica);
+        }
+    }
+
+    public boolean isHealthy(String replica) {
+        return healthyReplicas.contains(replica);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        var user = currentUser();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (user != null && TransactionSynchronizationManager.isActualTransactionActive()) {
+                recentWriters.put(user, Boolean.TRUE);
+            }
+            return PRIMARY;
+        }
+        if (PrimaryReadContext.isActive() || (user != null && recentWriters.getIfPresent(user) != null)) {
+            return PRIMARY;
+        }
+
+        // Try each replica once, starting at the next one in turn
+        var start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (var i = 0; i < replicas.size(); i++) {
+            var replica = replicas.get((start + i) % replicas.size());
+            if (healthyReplicas.contains(replica)) {
+                return replica;
+            }
+        }
+        return PRIMARY;
+    }
+
+    public void close() throws Exception {
+        for (var dataSource : replicaDataSources.values()) {
+            if (dataSource instanceof AutoCloseable) {
+                ((AutoCloseable) dataSource).close();
+            }
+        }
+    }
+
+    private static String currentUser() {
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? null : authentication.getName();
+    }
+}
@@ -0,0 +1,33 @@
+package nl.quintor.declaration.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard the current thread works on. Set by {@link ShardRouter} before a transaction starts, read by
+ * {@link ShardRoutingDataSource} when the transaction gets its connection.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    public static <T> T call(String shard, Supplier<T> work) {
+        var previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
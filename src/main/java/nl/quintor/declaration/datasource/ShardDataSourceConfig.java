@@ -0,0 +1,61 @@
+package nl.quintor.declaration.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+
+/**
+ * Partitioning by instanceId. The {@link ShardRouter} is always there, the shard data sources only when at least one
+ * shard is configured ({@code datasource.shards[0].url}).
+ */
+@Configuration
+@EnableConfigurationProperties(ShardDataSourceProperties.class)
+public class ShardDataSourceConfig {
+
+    @Bean
+    public ShardRouter shardRouter(ShardDataSourceProperties properties, PlatformTransactionManager transactionManager) {
+        return new ShardRouter(properties, transactionManager);
+    }
+
+    @Configuration
+    @ConditionalOnProperty("datasource.shards[0].url")
+    static class Sharded {
+
+        @Bean
+        public ShardRoutingDataSource shardRoutingDataSource(ShardDataSourceProperties properties) {
+            var shards = new LinkedHashMap<String, DataSource>();
+            for (var shard : properties.getShards()) {
+                var dataSource = DataSourceBuilder.create()
+                        .type(HikariDataSource.class)
+                        .url(shard.getUrl())
+                        .username(shard.getUsername())
+                        .password(shard.getPassword())
+                        .build();
+                dataSource.setPoolName(shard.getName());
+                shards.put(shard.getName(), dataSource);
+            }
+            return new ShardRoutingDataSource(shards);
+        }
+
+        @Bean
+        @Primary
+        public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+            return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+        }
+
+        @Bean
+        @ConditionalOnProperty(name = "spring.jpa.hibernate.ddl-auto", havingValue = "create")
+        public ShardSchemaInitializer shardSchemaInitializer(ShardRoutingDataSource shardRoutingDataSource) {
+            return new ShardSchemaInitializer(shardRoutingDataSource);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package nl.quintor.declaration.datasource;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties("datasource")
+public class ShardDataSourceProperties {
+    private List<Shard> shards = new ArrayList<>();
+    // instanceId to shard name, instances that aren't listed live on the first shard
+    private Map<String, String> instances = new HashMap<>();
+    // Threads running the per shard parts of queries that span all shards
+    private int scatterThreads = 16;
+
+    @Data
+    public static class Shard {
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+    }
+}
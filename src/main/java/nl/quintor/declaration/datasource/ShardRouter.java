@@ -0,0 +1,163 @@
+package nl.quintor.declaration.datasource;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Runs work in a transaction on the shard of an instance, or on all shards at once. Everything of an instance lives on
+ * one shard, instances that aren't mapped live on the first one. Without configured shards there is a single shard and
+ * all work runs on the calling thread.
+ */
+public class ShardRouter {
+
+    public static final String DEFAULT_SHARD = "default";
+
+    private List<String> shards;
+    private Map<String, String> instances;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate separate;
+    private ExecutorService executor;
+
+    public ShardRouter(ShardDataSourceProperties properties, PlatformTransactionManager transactionManager) {
+        this.shards = properties.getShards().isEmpty()
+                ? List.of(DEFAULT_SHARD)
+                : properties.getShards().stream().map(ShardDataSourceProperties.Shard::getName).collect(Collectors.toUnmodifiableList());
+        this.instances = Map.copyOf(properties.getInstances());
+        instances.forEach((instanceId, shard) -> {
+            if (!shards.contains(shard)) {
+                throw new IllegalStateException("Instance " + instanceId + " is mapped to unknown shard " + shard);
+            }
+        });
+
+        this.readWrite = new TransactionTemplate(transactionManager);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.separate = new TransactionTemplate(transactionManager);
+        this.separate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        if (isSharded()) {
+            var threads = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(properties.getScatterThreads(), runnable -> {
+                var thread = new Thread(runnable, "shard-scatter-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * All shards, the first one is the default.
+     */
+    public List<String> getShards() {
+        return shards;
+    }
+
+    public boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    public String shardOf(String instanceId) {
+        return instanceId == null ? shards.get(0) : instances.getOrDefault(instanceId, shards.get(0));
+    }
+
+    /**
+     * Runs the work in a transaction on the given shard. Joins a running transaction, as long as that one is on the
+     * same shard: its connection is taken already and can't be switched.
+     */
+    public <T> T inShard(String shard, boolean readOnly, Supplier<T> work) {
+        var current = Optional.ofNullable(ShardContext.current()).orElse(shards.get(0));
+        if (TransactionSynchronizationManager.isActualTransactionActive() && !current.equals(shard)) {
+            throw new IllegalStateException("A transaction on shard " + current + " can't continue on shard " + shard);
+        }
+        var template = readOnly ? this.readOnly : readWrite;
+        return ShardContext.call(shard, () -> template.execute(status -> work.get()));
+    }
+
+    /**
+     * Runs the work in a new transaction on the shard of the running one, which is suspended until the work is done.
+     * The work commits or rolls back on its own.
+     */
+    public <T> T inSeparateTransaction(Supplier<T> work) {
+        var shard = Optional.ofNullable(ShardContext.current()).orElse(shards.get(0));
+        return ShardContext.call(shard, () -> separate.execute(status -> work.get()));
+    }
+
+    /**
+     * Runs the work on every shard in parallel, each in a transaction of its own. The results are in shard order.
+     * A {@link PrimaryReadContext} of the caller carries over to the shards.
+     */
+    public <T> List<T> scatter(boolean readOnly, Function<String, T> work) {
+        return scatter(readOnly, work, (shard, e) -> {
+            throw e;
+        });
+    }
+
+    /**
+     * {@link #scatter} that keeps going when a shard fails: its transaction is rolled back and the failure is turned
+     * into its result, while the other shards commit.
+     */
+    public <T> List<T> scatter(boolean readOnly, Function<String, T> work, BiFunction<String, RuntimeException, T> onFailure) {
+        Function<String, T> isolated = shard -> {
+            try {
+                return inShard(shard, readOnly, () -> work.apply(shard));
+            } catch (RuntimeException e) {
+                return onFailure.apply(shard, e);
+            }
+        };
+        if (!isSharded()) {
+            return Collections.singletonList(isolated.apply(shards.get(0)));
+        }
+
+        var primaryReads = PrimaryReadContext.isActive();
+        var futures = shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> primaryReads
+                        ? PrimaryReadContext.call(() -> isolated.apply(shard))
+                        : isolated.apply(shard), executor))
+                .collect(Collectors.toList());
+        var results = new ArrayList<T>(futures.size());
+        for (var future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Looks something up by a key that doesn't tell its shard, like an id, on all shards at once.
+     */
+    public <T> Optional<T> findFirst(Function<String, Optional<T>> lookup) {
+        return scatter(true, lookup).stream()
+                .flatMap(Optional::stream)
+                .findFirst();
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
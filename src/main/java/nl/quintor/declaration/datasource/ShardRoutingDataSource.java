@@ -0,0 +1,47 @@
+package nl.quintor.declaration.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands out connections of the shard in the {@link ShardContext}, or of the first shard when none is set. Only works
+ * behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, a transaction has to choose its
+ * shard before its first statement.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private Map<String, DataSource> shardDataSources;
+
+    public ShardRoutingDataSource(LinkedHashMap<String, DataSource> shards) {
+        setTargetDataSources(new HashMap<>(shards));
+        setDefaultTargetDataSource(shards.values().iterator().next());
+        // A typo in a shard name must not end up on the first shard
+        setLenientFallback(false);
+        this.shardDataSources = Collections.unmodifiableMap(new LinkedHashMap<>(shards));
+    }
+
+    /**
+     * The data source of every shard, in configured order.
+     */
+    public Map<String, DataSource> getShardDataSources() {
+        return shardDataSources;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+    public void close() throws Exception {
+        for (var dataSource : shardDataSources.values()) {
+            if (dataSource instanceof AutoCloseable) {
+                ((AutoCloseable) dataSource).close();
+            }
+        }
+    }
+}
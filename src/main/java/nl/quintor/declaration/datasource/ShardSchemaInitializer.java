@@ -0,0 +1,67 @@
+package nl.quintor.declaration.datasource;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.hibernate.tool.schema.TargetType;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hibernate creates the schema on the first shard only, it doesn't know about the others. For databases that are
+ * created on startup ({@code spring.jpa.hibernate.ddl-auto=create}, e.g. several local H2 ones) this creates it on
+ * the other shards too and moves their ids into a range of their own.
+ */
+public class ShardSchemaInitializer implements Integrator, HibernatePropertiesCustomizer, SmartInitializingSingleton {
+
+    /**
+     * Ids of shard {@code n} start at {@code n * ID_RANGE}, so they are unique over all shards.
+     */
+    public static final long ID_RANGE = 1_000_000_000_000L;
+
+    private ShardRoutingDataSource shardRoutingDataSource;
+    private Metadata metadata;
+
+    public ShardSchemaInitializer(ShardRoutingDataSource shardRoutingDataSource) {
+        this.shardRoutingDataSource = shardRoutingDataSource;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put("hibernate.integrator_provider", (IntegratorProvider) () -> List.of(this));
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry) {
+        this.metadata = metadata;
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        var shards = List.copyOf(shardRoutingDataSource.getShardDataSources().keySet());
+        for (var index = 1; index < shards.size(); index++) {
+            var shard = shards.get(index);
+            ShardContext.call(shard, () -> {
+                new SchemaExport().execute(EnumSet.of(TargetType.DATABASE), SchemaExport.Action.BOTH, metadata);
+                return null;
+            });
+
+            var jdbcTemplate = new JdbcTemplate(shardRoutingDataSource.getShardDataSources().get(shard));
+            jdbcTemplate.execute("alter sequence declaration_seq restart with " + (index * ID_RANGE + 1));
+            jdbcTemplate.execute("alter table image alter column id restart with " + (index * ID_RANGE + 1));
+        }
+    }
+}
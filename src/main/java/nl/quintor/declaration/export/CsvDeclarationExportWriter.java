@@ -0,0 +1,71 @@
+package nl.quintor.declaration.export;
+
+import nl.quintor.declaration.model.Declaration;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+public class CsvDeclarationExportWriter implements DeclarationExportWriter {
+
+    private static final String HEADER = "id,costs,approvedLocal,approvedGlobal,employee,instanceId,imageId";
+
+    private Writer writer;
+    private boolean headerWritten;
+
+    public CsvDeclarationExportWriter(OutputStream outputStream) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void write(Declaration declaration) throws IOException {
+        writeHeaderIfNeeded();
+        writer.write(Long.toString(declaration.getId()));
+        writer.write(',');
+        writer.write(Double.toString(declaration.getCosts()));
+        writer.write(',');
+        writer.write(Boolean.toString(declaration.isApprovedLocal()));
+        writer.write(',');
+        writer.write(Boolean.toString(declaration.isApprovedGlobal()));
+        writer.write(',');
+        writer.write(escape(declaration.getEmployee()));
+        writer.write(',');
+        writer.write(escape(declaration.getInstanceId()));
+        writer.write(',');
+        writer.write(Long.toString(declaration.getImageId()));
+        writer.write("\r\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // An empty export still gets its header
+        writeHeaderIfNeeded();
+        writer.close();
+    }
+
+    private void writeHeaderIfNeeded() throws IOException {
+        if (!headerWritten) {
+            writer.write(HEADER);
+            writer.write("\r\n");
+            headerWritten = true;
+        }
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,15 @@
+package nl.quintor.declaration.export;
+
+import nl.quintor.declaration.model.Declaration;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Writes declarations one row at a time, so an export never holds more than one row in memory.
+ */
+public interface DeclarationExportWriter extends Flushable, Closeable {
+
+    void write(Declaration declaration) throws IOException;
+}
@@ -0,0 +1,47 @@
+package nl.quintor.declaration.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public enum ExportFormat {
+    NDJSON(MediaType.parseMediaType("application/x-ndjson"), "ndjson"),
+    CSV(MediaType.parseMediaType("text/csv;charset=UTF-8"), "csv");
+
+    private final MediaType mediaType;
+    private final String extension;
+
+    ExportFormat(MediaType mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public DeclarationExportWriter createWriter(OutputStream outputStream, ObjectMapper objectMapper) {
+        switch (this) {
+            case CSV:
+                return new CsvDeclarationExportWriter(outputStream);
+            case NDJSON:
+            default:
+                return new NdjsonDeclarationExportWriter(outputStream, objectMapper);
+        }
+    }
+
+    public static ExportFormat fromParameter(String format) {
+        return Arrays.stream(values())
+                .filter(value -> value.extension.equalsIgnoreCase(format))
+                .findFirst()
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported export format"));
+    }
+}
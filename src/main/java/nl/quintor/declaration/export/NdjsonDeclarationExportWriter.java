@@ -0,0 +1,38 @@
+package nl.quintor.declaration.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import nl.quintor.declaration.model.Declaration;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class NdjsonDeclarationExportWriter implements DeclarationExportWriter {
+
+    private static final int NEWLINE = '\n';
+
+    private OutputStream outputStream;
+    private ObjectWriter objectWriter;
+
+    public NdjsonDeclarationExportWriter(OutputStream outputStream, ObjectMapper objectMapper) {
+        this.outputStream = new BufferedOutputStream(outputStream);
+        this.objectWriter = objectMapper.writerFor(Declaration.class);
+    }
+
+    @Override
+    public void write(Declaration declaration) throws IOException {
+        outputStream.write(objectWriter.writeValueAsBytes(declaration));
+        outputStream.write(NEWLINE);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+}
@@ -0,0 +1,138 @@
+package nl.quintor.declaration.feed;
+
+import nl.quintor.declaration.cluster.RemoteDeclarationsChangedEvent;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.service.DeclarationChange;
+import nl.quintor.declaration.service.DeclarationChangedEvent;
+import nl.quintor.declaration.service.DeclarationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes committed declaration changes to subscribers as Server-Sent Events, so clients don't have to poll. Events
+ * carry the declaration as it is after the change, including its version. A client loads the declarations once
+ * after subscribing and again on a {@link FeedEvent#RESYNC}, and applies the events in between.
+ */
+@Service
+public class DeclarationFeed {
+
+    private DeclarationService declarationService;
+    private int bufferSize;
+    private Duration timeout;
+    private ExecutorService sender;
+    private Set<FeedSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public DeclarationFeed(DeclarationService declarationService,
+                           @Value("${declaration.feed.buffer-size:256}") int bufferSize,
+                           @Value("${declaration.feed.timeout:30m}") Duration timeout,
+                           @Value("${declaration.feed.sender-threads:4}") int senderThreads) {
+        this(declarationService, bufferSize, timeout, Executors.newFixedThreadPool(senderThreads, senderThreadFactory()));
+    }
+
+    DeclarationFeed(DeclarationService declarationService, int bufferSize, Duration timeout, ExecutorService sender) {
+        this.declarationService = declarationService;
+        this.bufferSize = bufferSize;
+        this.timeout = timeout;
+        this.sender = sender;
+    }
+
+    /**
+     * Subscribes to the changes of an employee and/or instance, or to all changes when both are {@code null}.
+     * Access to the filter is checked by the caller.
+     */
+    public SseEmitter subscribe(String employee, String instanceId) {
+        return subscribe(new SseEmitter(timeout.toMillis()), employee, instanceId);
+    }
+
+    SseEmitter subscribe(SseEmitter emitter, String employee, String instanceId) {
+        var subscription = new FeedSubscription(emitter, employee, instanceId, bufferSize, sender, subscriptions::remove);
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+        subscriptions.add(subscription);
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @TransactionalEventListener
+    public void onDeclarationChanged(DeclarationChangedEvent event) {
+        for (var change : event.getChanges()) {
+            if (change.getAfter() != null) {
+                publish(new FeedEvent(typeOf(change), change.getAfter()), change.getAfter());
+            }
+        }
+    }
+
+    /**
+     * Changes made through other instances only come with ids, they go out as updates of the current declarations.
+     */
+    @EventListener
+    public void onRemoteChange(RemoteDeclarationsChangedEvent event) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        // One batch read from the primary: the cache of this instance may not be evicted yet and a replica may lag
+        sender.execute(() -> declarationService.findAllById(event.getIds())
+                .forEach(declaration -> publish(new FeedEvent(FeedEvent.UPDATED, declaration), declaration)));
+    }
+
+    /**
+     * Keeps idle connections open through proxies and finds subscribers that went away.
+     */
+    @Scheduled(fixedDelayString = "${declaration.feed.heartbeat-interval:PT30S}")
+    public void heartbeat() {
+        subscriptions.forEach(subscription -> subscription.offer(FeedEvent.heartbeat()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+    private void publish(FeedEvent event, Declaration declaration) {
+        for (var subscription : subscriptions) {
+            if (subscription.matches(declaration)) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    private static String typeOf(DeclarationChange change) {
+        var before = change.getBefore();
+        var after = change.getAfter();
+        if (before == null) {
+            return FeedEvent.CREATED;
+        }
+        if ((!before.isApprovedLocal() && after.isApprovedLocal()) || (!before.isApprovedGlobal() && after.isApprovedGlobal())) {
+            return FeedEvent.APPROVED;
+        }
+        return FeedEvent.UPDATED;
+    }
+
+    private static ThreadFactory senderThreadFactory() {
+        var threads = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, "declaration-feed-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
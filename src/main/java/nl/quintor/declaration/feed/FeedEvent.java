@@ -0,0 +1,36 @@
+package nl.quintor.declaration.feed;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * An event as queued for a subscriber. The SSE form is built when it's sent, a builder can only be sent once.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class FeedEvent {
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String APPROVED = "approved";
+    // Events were dropped, the subscriber has to reload what it shows
+    public static final String RESYNC = "resync";
+
+    private final String name;
+    private final Object data;
+
+    static FeedEvent heartbeat() {
+        return new FeedEvent(null, null);
+    }
+
+    SseEmitter.SseEventBuilder toSse() {
+        if (name == null) {
+            return SseEmitter.event().comment("heartbeat");
+        }
+        var event = SseEmitter.event().name(name);
+        return data == null ? event.data("") : event.data(data, MediaType.APPLICATION_JSON);
+    }
+}
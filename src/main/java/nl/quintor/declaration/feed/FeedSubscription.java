@@ -0,0 +1,95 @@
+package nl.quintor.declaration.feed;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.quintor.declaration.model.Declaration;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * One subscriber with a bounded buffer. Events are sent by at most one sender thread at a time, in order. When the
+ * subscriber can't keep up its buffer is dropped and it gets a {@link FeedEvent#RESYNC} instead.
+ */
+@Slf4j
+class FeedSubscription {
+
+    private SseEmitter emitter;
+    private String employee;
+    private String instanceId;
+    private BlockingQueue<FeedEvent> buffer;
+    private Executor sender;
+    private Consumer<FeedSubscription> onClose;
+    private AtomicBoolean sending = new AtomicBoolean();
+    private volatile boolean overflowed;
+    private volatile boolean closed;
+
+    FeedSubscription(SseEmitter emitter, String employee, String instanceId, int bufferSize, Executor sender,
+                     Consumer<FeedSubscription> onClose) {
+        this.emitter = emitter;
+        this.employee = employee;
+        this.instanceId = instanceId;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.sender = sender;
+        this.onClose = onClose;
+    }
+
+    boolean matches(Declaration declaration) {
+        return (employee == null || employee.equals(declaration.getEmployee()))
+                && (instanceId == null || instanceId.equals(declaration.getInstanceId()));
+    }
+
+    void offer(FeedEvent event) {
+        if (closed) {
+            return;
+        }
+        if (!buffer.offer(event)) {
+            buffer.clear();
+            overflowed = true;
+        }
+        scheduleSend();
+    }
+
+    void close() {
+        closed = true;
+        buffer.clear();
+        onClose.accept(this);
+    }
+
+    private void scheduleSend() {
+        if (sending.compareAndSet(false, true)) {
+            sender.execute(this::send);
+        }
+    }
+
+    private void send() {
+        try {
+            while (!closed) {
+                if (overflowed) {
+                    overflowed = false;
+                    emitter.send(new FeedEvent(FeedEvent.RESYNC, null).toSse());
+                }
+                var event = buffer.poll();
+                if (event == null) {
+                    break;
+                }
+                emitter.send(event.toSse());
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Gone, or the emitter timed out already
+            log.debug("Dropping feed subscriber: {}", e.getMessage());
+            emitter.completeWithError(e);
+            close();
+        } finally {
+            sending.set(false);
+        }
+        // Events offered while we were finishing up would wait for the next event otherwise
+        if (!closed && (overflowed || !buffer.isEmpty())) {
+            scheduleSend();
+        }
+    }
+}
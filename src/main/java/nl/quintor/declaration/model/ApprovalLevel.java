@@ -0,0 +1,9 @@
+package nl.quintor.declaration.model;
+
+/**
+ * Which approval flag of a declaration an approval sets.
+ */
+public enum ApprovalLevel {
+    LOCAL,
+    GLOBAL
+}
@@ -0,0 +1,23 @@
+package nl.quintor.declaration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Approves the declarations with the given ids and/or of the given employee and instance, at least one of them
+ * has to be set. Declarations that are already approved on this level are left alone.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ApprovalRequest {
+    private ApprovalLevel level;
+    private List<Long> ids;
+    private String employee;
+    private String instanceId;
+}
@@ -0,0 +1,24 @@
+package nl.quintor.declaration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Ids of the declarations an approval approved. An approval by employee or instance approves a limited number of
+ * declarations per shard, {@code more} tells there are unapproved ones left and the request should be repeated.
+ * Each shard approves in a transaction of its own, {@code failedShards} lists the ones that failed while the others
+ * were approved. Repeating the request approves what is left.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ApprovalResult {
+    private List<Long> ids;
+    private boolean more;
+    private List<String> failedShards;
+}
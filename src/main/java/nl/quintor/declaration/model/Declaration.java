@@ -2,22 +2,34 @@ package nl.quintor.declaration.model;
 
 import lombok.*;
 
-import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
-import javax.persistence.Id;
+import javax.persistence.*;
 
+/**
+ * The indexes are created by the scripts in db/mysql in production, Hibernate only creates them for local databases.
+ */
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_declaration_employee_id", columnList = "employee, id"),
+        @Index(name = "idx_declaration_instance_id_id", columnList = "instanceId, id"),
+        @Index(name = "idx_declaration_approval_id", columnList = "approvedLocal, approvedGlobal, id"),
+        @Index(name = "idx_declaration_employee_changed_at", columnList = "employee, changedAt"),
+        @Index(name = "idx_declaration_changed_at", columnList = "changedAt")
+})
 @Getter
 @Setter
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @ToString
 public class Declaration {
 
+    /**
+     * Pooled sequence instead of IDENTITY, so inserts can be batched: Hibernate reserves blocks of 50 ids
+     * and doesn't need a round-trip per insert to learn the generated key.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "declaration_seq")
+    @SequenceGenerator(name = "declaration_seq", sequenceName = "declaration_seq", allocationSize = 50)
     private long id;
 
     private double costs;
@@ -26,4 +38,22 @@ public class Declaration {
     private String employee;
     private String instanceId;
     private long imageId;
+
+    /**
+     * Existing rows start at 0, see db/mysql/002-declaration-version.sql.
+     */
+    @Version
+    private long version;
+
+    /**
+     * Time of the last change in epoch millis, clients sync the declarations changed after their previous sync.
+     * Bulk updates have to set it themselves. Existing rows got it from db/mysql/004-declaration-changed-at.sql.
+     */
+    private long changedAt;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        changedAt = System.currentTimeMillis();
+    }
 }
@@ -0,0 +1,27 @@
+package nl.quintor.declaration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeclarationDelta {
+    /**
+     * Declarations created or changed since the cursor, in id order.
+     */
+    private List<Declaration> changed;
+    /**
+     * Ids of the declarations that left the list since the cursor.
+     */
+    private List<Long> removed;
+    /**
+     * Opaque cursor to pass to the next sync.
+     */
+    private String cursor;
+}
@@ -0,0 +1,20 @@
+package nl.quintor.declaration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Optional criteria for listing declarations, a {@code null} field means "don't filter on it".
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeclarationFilter {
+    private String employee;
+    private String instanceId;
+    private Boolean approvedLocal;
+    private Boolean approvedGlobal;
+}
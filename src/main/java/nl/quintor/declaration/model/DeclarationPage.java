@@ -0,0 +1,20 @@
+package nl.quintor.declaration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeclarationPage {
+    private List<Declaration> items;
+    /**
+     * Opaque cursor for the next page, {@code null} when this is the last page.
+     */
+    private String nextCursor;
+}
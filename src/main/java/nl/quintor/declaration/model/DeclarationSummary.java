@@ -0,0 +1,45 @@
+package nl.quintor.declaration.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Running totals of the declarations of one employee or one instance. Declarations without an employee or
+ * instanceId aren't counted in that dimension.
+ */
+@Entity
+@IdClass(DeclarationSummary.Key.class)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeclarationSummary {
+
+    @Id
+    @JsonIgnore
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private SummaryDimension dimension;
+
+    @Id
+    private String groupKey;
+
+    private long declarationCount;
+    private double totalCosts;
+    private long approvedLocalCount;
+    private long approvedGlobalCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private SummaryDimension dimension;
+        private String groupKey;
+    }
+}
@@ -0,0 +1,34 @@
+package nl.quintor.declaration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * Left behind when a declaration leaves the list of an employee, so clients that sync changes learn to drop it.
+ * Kept for {@code declaration.sync.tombstone-retention}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_declaration_tombstone_employee_removed_at", columnList = "employee, removedAt"),
+        @Index(name = "idx_declaration_tombstone_removed_at", columnList = "removedAt")
+})
+public class DeclarationTombstone {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    private long declarationId;
+    // The employee whose list the declaration left
+    private String employee;
+    // Gone for everyone, instead of moved to another employee
+    private boolean deleted;
+    private long removedAt;
+}
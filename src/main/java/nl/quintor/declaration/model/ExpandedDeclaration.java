@@ -0,0 +1,32 @@
+package nl.quintor.declaration.model;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A declaration with the metadata of its receipt embedded, answered for {@code expand=image}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpandedDeclaration {
+    @JsonUnwrapped
+    private Declaration declaration;
+    /**
+     * {@code null} when the declaration has no receipt of its employee.
+     */
+    private ImageMetadata image;
+
+    /**
+     * Row of {@link nl.quintor.declaration.repository.DeclarationRepository#EXPANDED_VIEW}, the image columns are
+     * {@code null} when the join found no image.
+     */
+    public ExpandedDeclaration(long id, double costs, boolean approvedLocal, boolean approvedGlobal, String employee,
+                               String instanceId, long imageId, long version, long changedAt, Long imageKey,
+                               String name, String fileName, Long size, String contentType, String hash) {
+        this.declaration = new Declaration(id, costs, approvedLocal, approvedGlobal, employee, instanceId, imageId, version, changedAt);
+        this.image = imageKey == null ? null : new ImageMetadata(imageKey, name, fileName, size, contentType, hash);
+    }
+}
@@ -1,5 +1,6 @@
 package nl.quintor.declaration.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -18,8 +19,26 @@ public class Image {
     private long id;
 
     private String employee;
+    // Decides the shard the image is stored on, existing images get it from db/mysql/003-image-instance-id.sql
+    private String instanceId;
     private String name;
     private String fileName;
-    @Lob
+
+    /**
+     * Key of the content in the {@link nl.quintor.declaration.storage.BlobStore}, the SHA-256 of the file. Like the
+     * size and type it's set by the service when the content is stored, never by clients.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String contentKey;
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long size;
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String contentType;
+
+    /**
+     * Content as uploaded, only used to receive it. The bytes themselves live in the blob store.
+     */
+    @Transient
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private byte[] file;
 }
@@ -0,0 +1,30 @@
+package nl.quintor.declaration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * What a client shows of a receipt without downloading it.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageMetadata {
+    private long id;
+    private String name;
+    private String fileName;
+    private long size;
+    private String contentType;
+    /**
+     * SHA-256 of the content.
+     */
+    private String hash;
+
+    public static ImageMetadata of(Image image) {
+        return new ImageMetadata(image.getId(), image.getName(), image.getFileName(), image.getSize(),
+                image.getContentType(), image.getContentKey());
+    }
+}
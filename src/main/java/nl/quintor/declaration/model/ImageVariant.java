@@ -0,0 +1,15 @@
+package nl.quintor.declaration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A downscaled rendition of an image, small enough to be kept in memory as a whole.
+ */
+@Data
+@AllArgsConstructor
+public class ImageVariant {
+    private String key;
+    private String contentType;
+    private byte[] content;
+}
@@ -0,0 +1,23 @@
+package nl.quintor.declaration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Single row the primary keeps stamping with the current time, its value on a replica shows the replication lag.
+ * Only written and read with plain JDBC by {@link nl.quintor.declaration.datasource.ReplicaLagMonitor}.
+ * Created by db/mysql/009-replication-heartbeat.sql in production.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicationHeartbeat {
+    @Id
+    private int id;
+    private long beatAt;
+}
@@ -0,0 +1,20 @@
+package nl.quintor.declaration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * What declaration summaries are grouped by, {@code property} is the grouped {@link Declaration} property.
+ */
+@Getter
+@AllArgsConstructor
+public enum SummaryDimension {
+    EMPLOYEE("employee"),
+    INSTANCE("instanceId");
+
+    private final String property;
+
+    public String keyOf(Declaration declaration) {
+        return this == EMPLOYEE ? declaration.getEmployee() : declaration.getInstanceId();
+    }
+}
@@ -0,0 +1,20 @@
+package nl.quintor.declaration.reporting;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CostGroup {
+    private String group;
+    private long count;
+    private double totalCosts;
+    private double minCosts;
+    private double maxCosts;
+    private long approvedLocalCount;
+    private long approvedGlobalCount;
+}
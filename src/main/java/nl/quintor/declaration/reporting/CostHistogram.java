@@ -0,0 +1,22 @@
+package nl.quintor.declaration.reporting;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Number of declarations per cost bucket, bucket {@code i} covers {@code [from + i * bucketWidth, from + (i + 1) * bucketWidth)}.
+ * Costs outside of all buckets are counted in {@code below} and {@code above}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CostHistogram {
+    private double from;
+    private double bucketWidth;
+    private long[] counts;
+    private long below;
+    private long above;
+}
@@ -0,0 +1,145 @@
+package nl.quintor.declaration.reporting;
+
+import nl.quintor.declaration.model.Declaration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-wise copy of all declarations: a primitive array per numeric property, bitsets for the flags and
+ * dictionary codes for the strings, so a scan touches a few dense arrays instead of millions of objects.
+ * Removed rows are only marked as not live, a rebuild compacts them away. Not thread-safe.
+ */
+public class DeclarationColumns {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private double[] costs = new double[INITIAL_CAPACITY];
+    private int[] employees = new int[INITIAL_CAPACITY];
+    private int[] instances = new int[INITIAL_CAPACITY];
+    private BitSet approvedLocal = new BitSet();
+    private BitSet approvedGlobal = new BitSet();
+    private BitSet live = new BitSet();
+    private int size;
+
+    private Map<Long, Integer> rows = new HashMap<>();
+    private Dictionary employeeDictionary = new Dictionary();
+    private Dictionary instanceDictionary = new Dictionary();
+
+    /**
+     * Adds or replaces the row of the declaration, unless the snapshot already holds a newer version of it.
+     */
+    public void put(Declaration declaration) {
+        var row = rows.get(declaration.getId());
+        if (row == null) {
+            row = size++;
+            ensureCapacity(size);
+            rows.put(declaration.getId(), row);
+        } else if (versions[row] > declaration.getVersion()) {
+            return;
+        }
+
+        ids[row] = declaration.getId();
+        versions[row] = declaration.getVersion();
+        costs[row] = declaration.getCosts();
+        employees[row] = employeeDictionary.encode(declaration.getEmployee());
+        instances[row] = instanceDictionary.encode(declaration.getInstanceId());
+        approvedLocal.set(row, declaration.isApprovedLocal());
+        approvedGlobal.set(row, declaration.isApprovedGlobal());
+        live.set(row);
+    }
+
+    public void remove(long id) {
+        var row = rows.get(id);
+        if (row != null) {
+            live.clear(row);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int liveCount() {
+        return live.cardinality();
+    }
+
+    boolean isLive(int row) {
+        return live.get(row);
+    }
+
+    double costs(int row) {
+        return costs[row];
+    }
+
+    int employee(int row) {
+        return employees[row];
+    }
+
+    int instance(int row) {
+        return instances[row];
+    }
+
+    boolean isApprovedLocal(int row) {
+        return approvedLocal.get(row);
+    }
+
+    boolean isApprovedGlobal(int row) {
+        return approvedGlobal.get(row);
+    }
+
+    Dictionary employeeDictionary() {
+        return employeeDictionary;
+    }
+
+    Dictionary instanceDictionary() {
+        return instanceDictionary;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        var newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        versions = Arrays.copyOf(versions, newCapacity);
+        costs = Arrays.copyOf(costs, newCapacity);
+        employees = Arrays.copyOf(employees, newCapacity);
+        instances = Arrays.copyOf(instances, newCapacity);
+    }
+
+    /**
+     * Maps each distinct value, including {@code null}, to a dense code.
+     */
+    static class Dictionary {
+        static final int ABSENT = -1;
+
+        private List<String> values = new ArrayList<>();
+        private Map<String, Integer> codes = new HashMap<>();
+
+        int encode(String value) {
+            return codes.computeIfAbsent(value, key -> {
+                values.add(key);
+                return values.size() - 1;
+            });
+        }
+
+        int codeOf(String value) {
+            return codes.getOrDefault(value, ABSENT);
+        }
+
+        String valueOf(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package nl.quintor.declaration.reporting;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Optional criteria for a report, a {@code null} field means "don't filter on it". The cost range includes
+ * {@code minCosts} and excludes {@code maxCosts}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReportFilter {
+    private String employee;
+    private String instanceId;
+    private Boolean approvedLocal;
+    private Boolean approvedGlobal;
+    private Double minCosts;
+    private Double maxCosts;
+}
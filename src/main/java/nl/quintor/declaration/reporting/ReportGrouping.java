@@ -0,0 +1,10 @@
+package nl.quintor.declaration.reporting;
+
+/**
+ * What a cost report is grouped by, {@code NONE} gives a single total.
+ */
+public enum ReportGrouping {
+    NONE,
+    EMPLOYEE,
+    INSTANCE
+}
@@ -0,0 +1,368 @@
+package nl.quintor.declaration.reporting;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.quintor.declaration.service.DeclarationChange;
+import nl.quintor.declaration.service.DeclarationChangedEvent;
+import nl.quintor.declaration.service.DeclarationService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ad-hoc cost reports evaluated on an in-memory {@link DeclarationColumns} snapshot instead of the database.
+ * The snapshot follows committed changes of this instance and is rebuilt periodically, which also picks up
+ * changes made by other instances. Scans are split over a dedicated fork/join pool.
+ */
+@Slf4j
+@Service
+public class ReportingService {
+
+    // Rows per leaf task, large enough that splitting costs less than scanning
+    private static final int SPLIT_THRESHOLD = 1 << 15;
+    private static final int MAX_BUCKETS = 1000;
+
+    private DeclarationService declarationService;
+    private ForkJoinPool pool;
+
+    private ReadWriteLock lock = new ReentrantReadWriteLock();
+    private DeclarationColumns columns = new DeclarationColumns();
+    // Changes committed while a rebuild is running, replayed onto the rebuilt snapshot
+    private List<DeclarationChange> changesDuringRefresh;
+
+    public ReportingService(DeclarationService declarationService,
+                            @Value("${declaration.reporting.parallelism:0}") int parallelism) {
+        this.declarationService = declarationService;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${declaration.reporting.refresh-interval:PT15M}",
+            initialDelayString = "${declaration.reporting.refresh-interval:PT15M}")
+    public synchronized void refresh() {
+        lock.writeLock().lock();
+        try {
+            changesDuringRefresh = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        var rebuilt = new DeclarationColumns();
+        try {
+            declarationService.forEach(null, rebuilt::put);
+        } catch (RuntimeException e) {
+            // A partial rebuild would lose declarations, the current snapshot followed every change and stays
+            lock.writeLock().lock();
+            try {
+                changesDuringRefresh = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            apply(rebuilt, changesDuringRefresh);
+            columns = rebuilt;
+            changesDuringRefresh = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Rebuilt reporting snapshot with {} declarations", rebuilt.liveCount());
+    }
+
+    @TransactionalEventListener
+    public void onDeclarationChanged(DeclarationChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            apply(columns, event.getChanges());
+            if (changesDuringRefresh != null) {
+                changesDuringRefresh.addAll(event.getChanges());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<CostGroup> costs(ReportFilter filter, ReportGrouping grouping) {
+        lock.readLock().lock();
+        try {
+            var rowFilter = RowFilter.of(columns, filter);
+            if (rowFilter == null) {
+                return List.of();
+            }
+            var dictionary = grouping == ReportGrouping.EMPLOYEE ? columns.employeeDictionary()
+                    : grouping == ReportGrouping.INSTANCE ? columns.instanceDictionary()
+                    : null;
+            var groups = dictionary == null ? 1 : dictionary.size();
+            var totals = pool.invoke(new CostScan(columns, rowFilter, grouping, groups, 0, columns.size()));
+
+            var result = new ArrayList<CostGroup>();
+            for (var group = 0; group < groups; group++) {
+                if (totals.count[group] > 0) {
+                    result.add(CostGroup.builder()
+                            .group(dictionary == null ? null : dictionary.valueOf(group))
+                            .count(totals.count[group])
+                            .totalCosts(totals.sum[group])
+                            .minCosts(totals.min[group])
+                            .maxCosts(totals.max[group])
+                            .approvedLocalCount(totals.approvedLocal[group])
+                            .approvedGlobalCount(totals.approvedGlobal[group])
+                            .build());
+                }
+            }
+            result.sort(Comparator.comparing(CostGroup::getGroup, Comparator.nullsFirst(Comparator.naturalOrder())));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public CostHistogram histogram(ReportFilter filter, double from, double bucketWidth, int buckets) {
+        if (!(bucketWidth > 0) || buckets < 1 || buckets > MAX_BUCKETS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Bucket width must be positive and there can be 1 to " + MAX_BUCKETS + " buckets");
+        }
+        lock.readLock().lock();
+        try {
+            var rowFilter = RowFilter.of(columns, filter);
+            // Two extra slots for the costs below and above all buckets
+            var counts = rowFilter == null ? new long[buckets + 2]
+                    : pool.invoke(new HistogramScan(columns, rowFilter, from, bucketWidth, buckets, 0, columns.size()));
+            return CostHistogram.builder()
+                    .from(from)
+                    .bucketWidth(bucketWidth)
+                    .counts(Arrays.copyOf(counts, buckets))
+                    .below(counts[buckets])
+                    .above(counts[buckets + 1])
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void apply(DeclarationColumns columns, List<DeclarationChange> changes) {
+        for (var change : changes) {
+            if (change.getAfter() != null) {
+                columns.put(change.getAfter());
+            } else if (change.getBefore() != null) {
+                columns.remove(change.getBefore().getId());
+            }
+        }
+    }
+
+    /**
+     * A {@link ReportFilter} with its strings resolved to dictionary codes.
+     */
+    private static class RowFilter {
+        private static final int ANY = -2;
+
+        private int employee = ANY;
+        private int instance = ANY;
+        private Boolean approvedLocal;
+        private Boolean approvedGlobal;
+        private double minCosts = Double.NEGATIVE_INFINITY;
+        private double maxCosts = Double.POSITIVE_INFINITY;
+
+        /**
+         * @return {@code null} when no row can match, because a filtered value doesn't occur at all
+         */
+        static RowFilter of(DeclarationColumns columns, ReportFilter filter) {
+            var rowFilter = new RowFilter();
+            if (filter.getEmployee() != null) {
+                rowFilter.employee = columns.employeeDictionary().codeOf(filter.getEmployee());
+            }
+            if (filter.getInstanceId() != null) {
+                rowFilter.instance = columns.instanceDictionary().codeOf(filter.getInstanceId());
+            }
+            if (rowFilter.employee == DeclarationColumns.Dictionary.ABSENT
+                    || rowFilter.instance == DeclarationColumns.Dictionary.ABSENT) {
+                return null;
+            }
+            rowFilter.approvedLocal = filter.getApprovedLocal();
+            rowFilter.approvedGlobal = filter.getApprovedGlobal();
+            if (filter.getMinCosts() != null) {
+                rowFilter.minCosts = filter.getMinCosts();
+            }
+            if (filter.getMaxCosts() != null) {
+                rowFilter.maxCosts = filter.getMaxCosts();
+            }
+            return rowFilter;
+        }
+
+        boolean matches(DeclarationColumns columns, int row) {
+            if (!columns.isLive(row)) {
+                return false;
+            }
+            if (employee != ANY && columns.employee(row) != employee) {
+                return false;
+            }
+            if (instance != ANY && columns.instance(row) != instance) {
+                return false;
+            }
+            if (approvedLocal != null && columns.isApprovedLocal(row) != approvedLocal) {
+                return false;
+            }
+            if (approvedGlobal != null && columns.isApprovedGlobal(row) != approvedGlobal) {
+                return false;
+            }
+            var costs = columns.costs(row);
+            return costs >= minCosts && costs < maxCosts;
+        }
+    }
+
+    private static class CostTotals {
+        private long[] count;
+        private double[] sum;
+        private double[] min;
+        private double[] max;
+        private long[] approvedLocal;
+        private long[] approvedGlobal;
+
+        CostTotals(int groups) {
+            count = new long[groups];
+            sum = new double[groups];
+            min = new double[groups];
+            max = new double[groups];
+            approvedLocal = new long[groups];
+            approvedGlobal = new long[groups];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        CostTotals merge(CostTotals other) {
+            for (var group = 0; group < count.length; group++) {
+                count[group] += other.count[group];
+                sum[group] += other.sum[group];
+                min[group] = Math.min(min[group], other.min[group]);
+                max[group] = Math.max(max[group], other.max[group]);
+                approvedLocal[group] += other.approvedLocal[group];
+                approvedGlobal[group] += other.approvedGlobal[group];
+            }
+            return this;
+        }
+    }
+
+    private static class CostScan extends RecursiveTask<CostTotals> {
+        private DeclarationColumns columns;
+        private RowFilter filter;
+        private ReportGrouping grouping;
+        private int groups;
+        private int from;
+        private int to;
+
+        CostScan(DeclarationColumns columns, RowFilter filter, ReportGrouping grouping, int groups, int from, int to) {
+            this.columns = columns;
+            this.filter = filter;
+            this.grouping = grouping;
+            this.groups = groups;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected CostTotals compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                var middle = (from + to) >>> 1;
+                var left = new CostScan(columns, filter, grouping, groups, from, middle);
+                left.fork();
+                var right = new CostScan(columns, filter, grouping, groups, middle, to).compute();
+                return left.join().merge(right);
+            }
+
+            var totals = new CostTotals(groups);
+            for (var row = from; row < to; row++) {
+                if (!filter.matches(columns, row)) {
+                    continue;
+                }
+                var group = grouping == ReportGrouping.EMPLOYEE ? columns.employee(row)
+                        : grouping == ReportGrouping.INSTANCE ? columns.instance(row)
+                        : 0;
+                var costs = columns.costs(row);
+                totals.count[group]++;
+                totals.sum[group] += costs;
+                totals.min[group] = Math.min(totals.min[group], costs);
+                totals.max[group] = Math.max(totals.max[group], costs);
+                if (columns.isApprovedLocal(row)) {
+                    totals.approvedLocal[group]++;
+                }
+                if (columns.isApprovedGlobal(row)) {
+                    totals.approvedGlobal[group]++;
+                }
+            }
+            return totals;
+        }
+    }
+
+    private static class HistogramScan extends RecursiveTask<long[]> {
+        private DeclarationColumns columns;
+        private RowFilter filter;
+        private double start;
+        private double bucketWidth;
+        private int buckets;
+        private int from;
+        private int to;
+
+        HistogramScan(DeclarationColumns columns, RowFilter filter, double start, double bucketWidth, int buckets,
+                      int from, int to) {
+            this.columns = columns;
+            this.filter = filter;
+            this.start = start;
+            this.bucketWidth = bucketWidth;
+            this.buckets = buckets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                var middle = (from + to) >>> 1;
+                var left = new HistogramScan(columns, filter, start, bucketWidth, buckets, from, middle);
+                left.fork();
+                var right = new HistogramScan(columns, filter, start, bucketWidth, buckets, middle, to).compute();
+                var counts = left.join();
+                for (var bucket = 0; bucket < counts.length; bucket++) {
+                    counts[bucket] += right[bucket];
+                }
+                return counts;
+            }
+
+            var counts = new long[buckets + 2];
+            for (var row = from; row < to; row++) {
+                if (!filter.matches(columns, row)) {
+                    continue;
+                }
+                var bucket = Math.floor((columns.costs(row) - start) / bucketWidth);
+                if (bucket < 0) {
+                    counts[buckets]++;
+                } else if (bucket >= buckets) {
+                    counts[buckets + 1]++;
+                } else {
+                    counts[(int) bucket]++;
+                }
+            }
+            return counts;
+        }
+    }
+}
@@ -1,14 +1,94 @@
 package nl.quintor.declaration.repository;
 
 import nl.quintor.declaration.model.Declaration;
-import org.dom4j.dtd.Decl;
+import nl.quintor.declaration.model.ExpandedDeclaration;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
-public interface DeclarationRepository extends JpaRepository<Declaration, Long> {
+public interface DeclarationRepository extends JpaRepository<Declaration, Long>, DeclarationRepositoryCustom {
+    /**
+     * Reads declarations as plain objects instead of entities: nothing is added to the persistence context, snapshotted
+     * for dirty checking or flushed. For reads whose results aren't changed.
+     */
+    String VIEW = "select new nl.quintor.declaration.model.Declaration(d.id, d.costs, d.approvedLocal, d.approvedGlobal, " +
+            "d.employee, d.instanceId, d.imageId, d.version, d.changedAt) from Declaration d ";
+
+    /**
+     * Like {@link #VIEW}, with the metadata of the receipt joined in. Only images of the declaration's own employee
+     * are joined.
+     */
+    String EXPANDED_VIEW = "select new nl.quintor.declaration.model.ExpandedDeclaration(d.id, d.costs, d.approvedLocal, " +
+            "d.approvedGlobal, d.employee, d.instanceId, d.imageId, d.version, d.changedAt, " +
+            "i.id, i.name, i.fileName, i.size, i.contentType, i.contentKey) " +
+            "from Declaration d left join Image i on i.id = d.imageId and i.employee = d.employee ";
+
     List<Declaration> findAllByEmployee(String employee);
 
+    Optional<Declaration> findByIdAndEmployee(long id, String employee);
+
+    @Query(VIEW + "order by d.id")
+    List<Declaration> findAllViews();
+
+    @Query(VIEW + "where d.employee = :employee order by d.id")
+    List<Declaration> findViewsByEmployee(@Param("employee") String employee);
+
+    @Query(VIEW + "where d.id = :id")
+    Optional<Declaration> findViewById(@Param("id") long id);
+
+    @Query(VIEW + "where d.id = :id and d.employee = :employee")
+    Optional<Declaration> findViewByIdAndEmployee(@Param("id") long id, @Param("employee") String employee);
+
+    @Query(VIEW + "where d.id in :ids order by d.id")
+    List<Declaration> findViewsByIds(@Param("ids") Collection<Long> ids);
+
+    @Query(EXPANDED_VIEW + "order by d.id")
+    List<ExpandedDeclaration> findAllExpanded();
+
+    @Query(EXPANDED_VIEW + "where d.employee = :employee order by d.id")
+    List<ExpandedDeclaration> findExpandedByEmployee(@Param("employee") String employee);
+
+    @Query(EXPANDED_VIEW + "where d.id = :id")
+    Optional<ExpandedDeclaration> findExpandedById(@Param("id") long id);
+
+    @Query(EXPANDED_VIEW + "where d.id = :id and d.employee = :employee")
+    Optional<ExpandedDeclaration> findExpandedByIdAndEmployee(@Param("id") long id, @Param("employee") String employee);
+
+    @Query(VIEW + "where d.changedAt > :since order by d.id")
+    List<Declaration> findViewsChangedSince(@Param("since") long since);
+
+    @Query(VIEW + "where d.employee = :employee and d.changedAt > :since order by d.id")
+    List<Declaration> findViewsByEmployeeChangedSince(@Param("employee") String employee, @Param("since") long since);
+
+    @Query("select d.id from Declaration d where d.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    Stream<Declaration> streamAllByOrderByIdAsc();
+
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    Stream<Declaration> streamAllByEmployeeOrderByIdAsc(String employee);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update versioned Declaration d set d.approvedLocal = true, d.changedAt = :changedAt " +
+            "where d.id in :ids and d.approvedLocal = false")
+    int approveLocal(@Param("ids") Collection<Long> ids, @Param("changedAt") long changedAt);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update versioned Declaration d set d.approvedGlobal = true, d.changedAt = :changedAt " +
+            "where d.id in :ids and d.approvedGlobal = false")
+    int approveGlobal(@Param("ids") Collection<Long> ids, @Param("changedAt") long changedAt);
 }
@@ -0,0 +1,22 @@
+package nl.quintor.declaration.repository;
+
+import nl.quintor.declaration.model.ApprovalRequest;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.model.DeclarationFilter;
+
+import java.util.List;
+
+public interface DeclarationRepositoryCustom {
+
+    /**
+     * Keyset page: at most {@code limit} declarations matching the filter with an id greater than
+     * {@code afterId}, ordered by id.
+     */
+    List<Declaration> findPage(DeclarationFilter filter, long afterId, int limit);
+
+    /**
+     * At most {@code limit} declarations the request selects that aren't approved on its level yet, ordered by id.
+     * The rows are locked for the rest of the transaction, so a concurrent approval can't approve them in between.
+     */
+    List<Declaration> lockUnapproved(ApprovalRequest request, int limit);
+}
@@ -0,0 +1,81 @@
+package nl.quintor.declaration.repository;
+
+import nl.quintor.declaration.model.ApprovalLevel;
+import nl.quintor.declaration.model.ApprovalRequest;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.model.DeclarationFilter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.Predicate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DeclarationRepositoryCustomImpl implements DeclarationRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Declaration> findPage(DeclarationFilter filter, long afterId, int limit) {
+        var builder = entityManager.getCriteriaBuilder();
+        var query = builder.createQuery(Declaration.class);
+        var root = query.from(Declaration.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(builder.greaterThan(root.get("id"), afterId));
+        if (filter.getEmployee() != null) {
+            predicates.add(builder.equal(root.get("employee"), filter.getEmployee()));
+        }
+        if (filter.getInstanceId() != null) {
+            predicates.add(builder.equal(root.get("instanceId"), filter.getInstanceId()));
+        }
+        if (filter.getApprovedLocal() != null) {
+            predicates.add(builder.equal(root.get("approvedLocal"), filter.getApprovedLocal()));
+        }
+        if (filter.getApprovedGlobal() != null) {
+            predicates.add(builder.equal(root.get("approvedGlobal"), filter.getApprovedGlobal()));
+        }
+
+        // Plain objects like DeclarationRepository.VIEW, pages are only read
+        query.select(builder.construct(Declaration.class, root.get("id"), root.get("costs"), root.get("approvedLocal"),
+                root.get("approvedGlobal"), root.get("employee"), root.get("instanceId"), root.get("imageId"),
+                root.get("version"), root.get("changedAt")))
+                .where(predicates.toArray(Predicate[]::new))
+                .orderBy(builder.asc(root.get("id")));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public List<Declaration> lockUnapproved(ApprovalRequest request, int limit) {
+        var builder = entityManager.getCriteriaBuilder();
+        var query = builder.createQuery(Declaration.class);
+        var root = query.from(Declaration.class);
+
+        var flag = request.getLevel() == ApprovalLevel.LOCAL ? "approvedLocal" : "approvedGlobal";
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(builder.isFalse(root.get(flag)));
+        if (request.getIds() != null && !request.getIds().isEmpty()) {
+            predicates.add(root.get("id").in(request.getIds()));
+        }
+        if (request.getEmployee() != null) {
+            predicates.add(builder.equal(root.get("employee"), request.getEmployee()));
+        }
+        if (request.getInstanceId() != null) {
+            predicates.add(builder.equal(root.get("instanceId"), request.getInstanceId()));
+        }
+
+        query.select(root)
+                .where(predicates.toArray(Predicate[]::new))
+                .orderBy(builder.asc(root.get("id")));
+
+        return entityManager.createQuery(query)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
@@ -0,0 +1,32 @@
+package nl.quintor.declaration.repository;
+
+import nl.quintor.declaration.model.DeclarationSummary;
+import nl.quintor.declaration.model.SummaryDimension;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DeclarationSummaryRepository extends JpaRepository<DeclarationSummary, DeclarationSummary.Key> {
+    List<DeclarationSummary> findAllByDimensionOrderByGroupKey(SummaryDimension dimension);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<DeclarationSummary> findByDimensionAndGroupKey(SummaryDimension dimension, String groupKey);
+
+    @Modifying
+    @Query("update DeclarationSummary s set s.declarationCount = s.declarationCount + :count, " +
+            "s.totalCosts = s.totalCosts + :costs, " +
+            "s.approvedLocalCount = s.approvedLocalCount + :approvedLocal, " +
+            "s.approvedGlobalCount = s.approvedGlobalCount + :approvedGlobal " +
+            "where s.dimension = :dimension and s.groupKey = :groupKey")
+    int addDelta(@Param("dimension") SummaryDimension dimension, @Param("groupKey") String groupKey,
+                 @Param("count") long count, @Param("costs") double costs,
+                 @Param("approvedLocal") long approvedLocal, @Param("approvedGlobal") long approvedGlobal);
+}
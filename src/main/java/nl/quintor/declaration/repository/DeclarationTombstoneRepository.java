@@ -0,0 +1,23 @@
+package nl.quintor.declaration.repository;
+
+import nl.quintor.declaration.model.DeclarationTombstone;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface DeclarationTombstoneRepository extends JpaRepository<DeclarationTombstone, Long> {
+    @Query("select t.declarationId from DeclarationTombstone t where t.employee = :employee and t.removedAt > :since")
+    List<Long> findRemovedIds(@Param("employee") String employee, @Param("since") long since);
+
+    @Query("select t.declarationId from DeclarationTombstone t where t.deleted = true and t.removedAt > :since")
+    List<Long> findDeletedIds(@Param("since") long since);
+
+    @Modifying
+    @Query("delete from DeclarationTombstone t where t.removedAt < :before")
+    int deleteRemovedBefore(@Param("before") long before);
+}
@@ -2,8 +2,15 @@ package nl.quintor.declaration.repository;
 
 import nl.quintor.declaration.model.Image;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 public interface ImageRepository extends JpaRepository<Image, Long> {
+
+    @Query("select i.employee from Image i where i.id = :id")
+    Optional<String> findEmployeeById(@Param("id") long id);
 }
@@ -1,26 +1,67 @@
 package nl.quintor.declaration.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.web.client.RestTemplate;
 
-import java.security.Key;
-import java.security.KeyFactory;
-import java.security.PublicKey;
-import java.security.spec.X509EncodedKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-
+/**
+ * Turns JWT tokens into authentications. Clients reuse their token for many requests, so the parsed username and
+ * roles are cached by token digest until the token expires (or the cache ttl passes, whichever comes first). Every
+ * call gets its own authentication, these are mutable and may be handed to concurrent requests otherwise.
+ */
 public class JwtTokenValidator {
     private static final String ROLES_KEY = "roles";
     private static final String ROLES_DELIMITTER = ",";
+    private static final int MAX_DISTINCT_ROLES = 1_000;
+
+    private Duration cacheTtl;
+    private Cache<String, CachedAuthentication> authentications;
+    private Cache<String, List<GrantedAuthority>> authorities;
+
+    public JwtTokenValidator(long cacheSize, Duration cacheTtl, MeterRegistry meterRegistry) {
+        this.cacheTtl = cacheTtl;
+        this.authentications = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new UntilTokenExpires())
+                .recordStats()
+                .build();
+        this.authorities = Caffeine.newBuilder()
+                .maximumSize(MAX_DISTINCT_ROLES)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, authentications, "jwt.authentications");
+    }
 
     public Optional<Authentication> getAuthentication(String token) {
+        var key = digest(token);
+        var cached = authentications.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached.toAuthentication());
+        }
+
+        var parsed = parse(token);
+        parsed.ifPresent(authentication -> authentications.put(key, authentication));
+        return parsed.map(CachedAuthentication::toAuthentication);
+    }
+
+    private Optional<CachedAuthentication> parse(String token) {
         Jwt<Header, Claims> claims;
 
         try {
@@ -33,12 +74,62 @@ public class JwtTokenValidator {
         }
 
         var username = claims.getBody().getSubject();
-        var roles = Arrays.stream(claims.getBody()
-                .get(ROLES_KEY, String.class)
-                .split(ROLES_DELIMITTER))
+        var roles = authorities.get(claims.getBody().get(ROLES_KEY, String.class), JwtTokenValidator::toAuthorities);
+
+        var expiresAt = Optional.ofNullable(claims.getBody().getExpiration())
+                .map(expiration -> expiration.getTime())
+                .orElse(Long.MAX_VALUE);
+
+        return Optional.of(new CachedAuthentication(username, roles, expiresAt));
+    }
+
+    private static List<GrantedAuthority> toAuthorities(String roles) {
+        return Collections.unmodifiableList(Arrays.stream(roles.split(ROLES_DELIMITTER))
                 .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
+    }
 
-        return Optional.of(new UsernamePasswordAuthenticationToken(username, "", roles));
+    private static String digest(String token) {
+        try {
+            var sha256 = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static class CachedAuthentication {
+        private final String username;
+        private final List<GrantedAuthority> roles;
+        private final long expiresAt;
+
+        private CachedAuthentication(String username, List<GrantedAuthority> roles, long expiresAt) {
+            this.username = username;
+            this.roles = roles;
+            this.expiresAt = expiresAt;
+        }
+
+        private Authentication toAuthentication() {
+            return new UsernamePasswordAuthenticationToken(username, "", roles);
+        }
+    }
+
+    private class UntilTokenExpires implements Expiry<String, CachedAuthentication> {
+
+        @Override
+        public long expireAfterCreate(String key, CachedAuthentication value, long currentTime) {
+            var untilExpired = Math.max(0, value.expiresAt - System.currentTimeMillis());
+            return Duration.ofMillis(Math.min(untilExpired, cacheTtl.toMillis())).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedAuthentication value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedAuthentication value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
@@ -1,8 +1,11 @@
 package nl.quintor.declaration.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import nl.quintor.declaration.cluster.HttpInvalidationTransport;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
@@ -14,6 +17,7 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 import org.springframework.web.client.RestTemplate;
 
 import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
 
 @Configuration
 @EnableWebSecurity
@@ -25,6 +29,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         http.csrf().disable()
 
                 .authorizeRequests()
+                // Peers authenticate invalidations with the shared cluster secret instead of a JWT
+                .antMatchers(HttpMethod.POST, HttpInvalidationTransport.PATH).permitAll()
                 .anyRequest().authenticated()
 
                 .and()
@@ -41,13 +47,25 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         // This configuration will be used by authenticationManagerBean() below.
     }
 
+    @Value("${security.jwt.cache.size:10000}")
+    private long jwtCacheSize;
+
+    @Value("${security.jwt.cache.ttl:5m}")
+    private Duration jwtCacheTtl;
+
+    private MeterRegistry meterRegistry;
+
+    public SecurityConfig(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @Bean
     public JwtTokenFilter JwtTokenFilter() {
         return new JwtTokenFilter(JwtTokenValidator());
     }
 
     @Bean
-    public JwtTokenValidator JwtTokenValidator() {return new JwtTokenValidator();}
+    public JwtTokenValidator JwtTokenValidator() {return new JwtTokenValidator(jwtCacheSize, jwtCacheTtl, meterRegistry);}
 
     @Bean
     public AuthenticationManager authenticationManagerBean() throws Exception {
@@ -1,6 +1,6 @@
 package nl.quintor.declaration.security.accessLayers;
 
-import org.springframework.security.access.prepost.PostAuthorize;
+import org.springframework.security.access.annotation.Secured;
 
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
@@ -9,6 +9,6 @@ import java.lang.annotation.Target;
 
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
-@PostAuthorize("returnObject.employee == authentication.principal or hasAnyRole('ROLE_MANAGER', 'ROLE_ASSISTANT_MANAGER')")
-public @interface IsManagerOrAssistantManagerOrIdMatchesDeclarationWhereUserIsOwner {
+@Secured({"ROLE_MANAGER", "ROLE_ASSISTANT_MANAGER"})
+public @interface IsManagerOrAssistantManager {
 }
@@ -2,11 +2,17 @@ package nl.quintor.declaration.security.accessLayers.helper;
 
 import nl.quintor.declaration.service.DeclarationService;
 import nl.quintor.declaration.service.ImageService;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 
+import java.util.Set;
+
 @Component
 public class SecurityHelperFunctions {
 
+    private static final Set<String> UNSCOPED_ROLES = Set.of("ROLE_MANAGER", "ROLE_ASSISTANT_MANAGER");
+
     private ImageService imageService;
     private DeclarationService declarationService;
 
@@ -16,9 +22,18 @@ public class SecurityHelperFunctions {
     }
 
     public boolean isOwnerOfImage(long id, String principal) {
-        return imageService.findById(id)
-                .map(image -> image.getEmployee().equals(principal) )
+        return imageService.findOwnerById(id)
+                .map(owner -> owner.equals(principal))
                 .orElse(false);
     }
 
+    /**
+     * Managers and assistant managers may see every declaration, everyone else only their own.
+     */
+    public static boolean isManagerOrAssistantManager(Authentication authentication) {
+        return authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .anyMatch(UNSCOPED_ROLES::contains);
+    }
+
 }
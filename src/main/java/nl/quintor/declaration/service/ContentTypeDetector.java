@@ -0,0 +1,69 @@
+package nl.quintor.declaration.service;
+
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.util.Optional;
+
+/**
+ * Detects the type of an uploaded receipt from its magic bytes, falling back on the file name.
+ */
+public final class ContentTypeDetector {
+
+    private static final int HEADER_LENGTH = 8;
+
+    private ContentTypeDetector() {
+    }
+
+    /**
+     * Peeks at the first bytes of a stream that supports mark/reset, leaving it at its original position.
+     */
+    public static String detect(InputStream content, String fileName) throws IOException {
+        content.mark(HEADER_LENGTH);
+        var header = content.readNBytes(HEADER_LENGTH);
+        content.reset();
+        return detect(header, fileName);
+    }
+
+    public static String detect(byte[] header, String fileName) {
+        return fromMagicBytes(header)
+                .or(() -> Optional.ofNullable(fileName).map(URLConnection::guessContentTypeFromName))
+                .orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    }
+
+    private static Optional<String> fromMagicBytes(byte[] header) {
+        if (startsWith(header, 0xFF, 0xD8, 0xFF)) {
+            return Optional.of(MediaType.IMAGE_JPEG_VALUE);
+        }
+        if (startsWith(header, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return Optional.of(MediaType.IMAGE_PNG_VALUE);
+        }
+        if (startsWith(header, 'G', 'I', 'F', '8')) {
+            return Optional.of(MediaType.IMAGE_GIF_VALUE);
+        }
+        if (startsWith(header, '%', 'P', 'D', 'F', '-')) {
+            return Optional.of(MediaType.APPLICATION_PDF_VALUE);
+        }
+        if (startsWith(header, 'I', 'I', 0x2A, 0x00) || startsWith(header, 'M', 'M', 0x00, 0x2A)) {
+            return Optional.of("image/tiff");
+        }
+        if (startsWith(header, 'B', 'M')) {
+            return Optional.of("image/bmp");
+        }
+        return Optional.empty();
+    }
+
+    private static boolean startsWith(byte[] header, int... magic) {
+        if (header == null || header.length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,17 @@
+package nl.quintor.declaration.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import nl.quintor.declaration.model.Declaration;
+
+/**
+ * Copies of a declaration before and after a write, {@code before} is {@code null} for a created declaration.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class DeclarationChange {
+    private final Declaration before;
+    private final Declaration after;
+}
@@ -0,0 +1,18 @@
+package nl.quintor.declaration.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Published by {@link DeclarationService} inside the transaction of every write. Synchronous listeners take part in
+ * that transaction, use {@code @TransactionalEventListener} to only act on committed changes.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class DeclarationChangedEvent {
+    private final List<DeclarationChange> changes;
+}
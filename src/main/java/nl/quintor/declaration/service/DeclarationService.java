@@ -1,35 +1,730 @@
 package nl.quintor.declaration.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import nl.quintor.declaration.config.CacheConfig;
+import nl.quintor.declaration.datasource.PrimaryReadContext;
+import nl.quintor.declaration.datasource.ShardRouter;
+import nl.quintor.declaration.model.ApprovalLevel;
+import nl.quintor.declaration.model.ApprovalRequest;
+import nl.quintor.declaration.model.ApprovalResult;
+import nl.quintor.declaration.model.BatchItemResult;
 import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.model.DeclarationFilter;
+import nl.quintor.declaration.model.DeclarationPage;
+import nl.quintor.declaration.model.ExpandedDeclaration;
+import nl.quintor.declaration.model.Image;
+import nl.quintor.declaration.model.ImageMetadata;
 import nl.quintor.declaration.repository.DeclarationRepository;
-import org.dom4j.dtd.Decl;
+import nl.quintor.declaration.repository.ImageRepository;
+import nl.quintor.declaration.security.accessLayers.helper.SecurityHelperFunctions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.IntToLongFunction;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class DeclarationService {
 
+    private static final Set<String> APPROVAL_FIELDS = Set.of("approvedLocal", "approvedGlobal");
+    private static final String MOVED_SHARD = "Declaration can't move to an instance on another shard";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     private DeclarationRepository declarationRepository;
+    private ImageRepository imageRepository;
+    private ShardRouter shardRouter;
+    private ApplicationEventPublisher eventPublisher;
+    private Cache declarationCache;
+    private Cache employeeCache;
+    private Cache ownDeclarationCache;
+    private int defaultPageSize;
+    private int maxPageSize;
+    private int maxBatchSize;
+    private int jdbcBatchSize;
 
-    public DeclarationService(DeclarationRepository declarationRepository) {
+    public DeclarationService(DeclarationRepository declarationRepository,
+                              ImageRepository imageRepository,
+                              ShardRouter shardRouter,
+                              ApplicationEventPublisher eventPublisher,
+                              CacheManager cacheManager,
+                              @Value("${declaration.page.default-size:50}") int defaultPageSize,
+                              @Value("${declaration.page.max-size:500}") int maxPageSize,
+                              @Value("${declaration.batch.max-size:10000}") int maxBatchSize,
+                              @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int jdbcBatchSize) {
         this.declarationRepository = declarationRepository;
+        this.imageRepository = imageRepository;
+        this.shardRouter = shardRouter;
+        this.eventPublisher = eventPublisher;
+        this.declarationCache = cacheManager.getCache(CacheConfig.DECLARATIONS);
+        this.employeeCache = cacheManager.getCache(CacheConfig.DECLARATIONS_BY_EMPLOYEE);
+        this.ownDeclarationCache = cacheManager.getCache(CacheConfig.OWN_DECLARATIONS);
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchSize = maxBatchSize;
+        this.jdbcBatchSize = jdbcBatchSize;
     }
 
+    /**
+     * Cached per employee. Cached declarations are shared, callers must not modify them.
+     */
     public List<Declaration> findAllByEmployee(String employee) {
-        return declarationRepository.findAllByEmployee(employee);
+        // Loads read the primary: an eviction that arrives before a lagging replica caught up wouldn't evict the
+        // stale rows it returned
+        return employeeCache.get(employee, () -> PrimaryReadContext.call(() -> List.copyOf(merge(
+                shardRouter.scatter(true, shard -> declarationRepository.findViewsByEmployee(employee))))));
     }
 
     public List<Declaration> findAll() {
-        return declarationRepository.findAll();
+        return merge(shardRouter.scatter(true, shard -> declarationRepository.findAllViews()));
+    }
+
+    /**
+     * Every shard returns its first page, the page over all shards is the first part of those merged.
+     */
+    public DeclarationPage findPage(DeclarationFilter filter, String cursor, Integer size) {
+        var limit = Math.min(Optional.ofNullable(size).orElse(defaultPageSize), maxPageSize);
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page size must be positive");
+        }
+
+        // Fetch one row more than requested to find out whether there is a next page
+        var afterId = decodeCursor(cursor);
+        var declarations = filter.getInstanceId() != null
+                ? shardRouter.inShard(shardRouter.shardOf(filter.getInstanceId()), true,
+                        () -> declarationRepository.findPage(filter, afterId, limit + 1))
+                : merge(shardRouter.scatter(true, shard -> declarationRepository.findPage(filter, afterId, limit + 1)));
+        if (declarations.size() <= limit) {
+            return DeclarationPage.builder().items(declarations).build();
+        }
+
+        var items = declarations.subList(0, limit);
+        return DeclarationPage.builder()
+                .items(items)
+                .nextCursor(encodeCursor(items.get(limit - 1).getId()))
+                .build();
     }
 
+    /**
+     * Hands every declaration (of the given employee, or all when {@code null}) to the consumer, one shard after the
+     * other and in id order per shard. Rows are read through a database cursor and detached once consumed, so memory
+     * use doesn't depend on the number of declarations.
+     */
+    public void forEach(String employee, Consumer<Declaration> consumer) {
+        for (var shard : shardRouter.getShards()) {
+            shardRouter.inShard(shard, true, () -> {
+                try (var declarations = Optional.ofNullable(employee)
+                        .map(declarationRepository::streamAllByEmployeeOrderByIdAsc)
+                        .orElseGet(declarationRepository::streamAllByOrderByIdAsc)) {
+                    declarations.forEach(declaration -> {
+                        consumer.accept(declaration);
+                        entityManager.detach(declaration);
+                    });
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Cached by id. Cached declarations are shared, callers must not modify them.
+     */
     public Optional<Declaration> findById(long id) {
-        return declarationRepository.findById(id);
+        // Loading through the cache is atomic per key, an eviction waits for a running load and removes its result
+        return Optional.ofNullable(declarationCache.get(id, () -> PrimaryReadContext.call(
+                () -> shardRouter.findFirst(shard -> declarationRepository.findViewById(id)).orElse(null))));
+    }
+
+    /**
+     * The current state of the declarations, read from the primary past the cache, with one query per chunk of ids and
+     * shard. Ids that don't exist are left out.
+     */
+    public List<Declaration> findAllById(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return PrimaryReadContext.call(() -> merge(shardRouter.scatter(true, shard -> {
+            var declarations = new ArrayList<Declaration>(ids.size());
+            for (var from = 0; from < ids.size(); from += maxPageSize) {
+                declarations.addAll(declarationRepository.findViewsByIds(ids.subList(from, Math.min(from + maxPageSize, ids.size()))));
+            }
+            return declarations;
+        })));
+    }
+
+    /**
+     * Finds a declaration the user is allowed to see. Employees only query their own declarations, someone else's
+     * is never loaded and looks exactly like a missing one. Their lookups are cached per id and employee.
+     */
+    public Optional<Declaration> findVisibleById(long id, Authentication authentication) {
+        if (SecurityHelperFunctions.isManagerOrAssistantManager(authentication)) {
+            return findById(id);
+        }
+        var employee = authentication.getName();
+        return Optional.ofNullable(ownDeclarationCache.get(CacheConfig.ownDeclarationKey(id, employee),
+                () -> PrimaryReadContext.call(() -> shardRouter.findFirst(
+                        shard -> declarationRepository.findViewByIdAndEmployee(id, employee)).orElse(null))));
+    }
+
+    /**
+     * Declarations of the employee, or all when {@code null}, with the metadata of their receipts read in the same
+     * join query, so clients don't need a request per receipt.
+     */
+    public List<ExpandedDeclaration> findAllExpanded(String employee) {
+        var declarations = shardRouter.scatter(true, shard -> employee == null
+                ? declarationRepository.findAllExpanded()
+                : declarationRepository.findExpandedByEmployee(employee)).stream()
+                .flatMap(Collection::stream)
+                .sorted(Comparator.comparingLong(expanded -> expanded.getDeclaration().getId()))
+                .collect(Collectors.toList());
+        return withImagesOfOtherShards(declarations);
+    }
+
+    /**
+     * {@link #findVisibleById} with the metadata of the receipt.
+     */
+    public Optional<ExpandedDeclaration> findVisibleExpandedById(long id, Authentication authentication) {
+        var manager = SecurityHelperFunctions.isManagerOrAssistantManager(authentication);
+        return shardRouter.findFirst(shard -> manager
+                ? declarationRepository.findExpandedById(id)
+                : declarationRepository.findExpandedByIdAndEmployee(id, authentication.getName()))
+                .map(expanded -> withImagesOfOtherShards(List.of(expanded)).get(0));
     }
 
     public Declaration save(Declaration declaration) {
-        return declarationRepository.save(declaration);
+        var shard = shardRouter.shardOf(declaration.getInstanceId());
+        if (declaration.getId() != 0 && !shardOfId(declaration.getId()).orElse(shard).equals(shard)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, MOVED_SHARD);
+        }
+        return shardRouter.inShard(shard, false, () -> {
+            // The merge reads the current row anyway, loading it first just lets us keep a copy of it
+            var before = declaration.getId() == 0 ? null : declarationRepository.findById(declaration.getId())
+                    .map(DeclarationService::snapshot)
+                    .orElse(null);
+            var saved = declarationRepository.save(declaration);
+            publishChanges(List.of(new DeclarationChange(before, snapshot(saved))));
+            return saved;
+        });
+    }
+
+    /**
+     * Creates all declarations the user is allowed to create, in one transaction per shard. Inserts are sent as JDBC
+     * batches and the persistence context is cleared after every batch, so its size doesn't grow with the request.
+     * When the batch spans shards and one of them fails, only its declarations are reported as failed.
+     */
+    public List<BatchItemResult> createAll(List<Declaration> declarations, Authentication authentication) {
+        checkBatchSize(declarations);
+        var manager = SecurityHelperFunctions.isManagerOrAssistantManager(authentication);
+
+        var results = new ArrayList<BatchItemResult>(declarations.size());
+        var byShard = new LinkedHashMap<String, List<Integer>>();
+        for (var index = 0; index < declarations.size(); index++) {
+            var declaration = declarations.get(index);
+            if (declaration == null) {
+                results.add(failed(index, 0, HttpStatus.BAD_REQUEST, "Declaration is missing"));
+                continue;
+            }
+            if (!manager && !authentication.getName().equals(declaration.getEmployee())) {
+                results.add(failed(index, 0, HttpStatus.FORBIDDEN, "Access is denied"));
+                continue;
+            }
+            byShard.computeIfAbsent(shardRouter.shardOf(declaration.getInstanceId()), shard -> new ArrayList<>()).add(index);
+        }
+
+        results.addAll(inEveryShard(byShard, index -> 0, (shard, indexes) -> createAll(declarations, indexes)));
+        results.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+        return results;
+    }
+
+    /**
+     * Creates the declarations, in one transaction per shard, without checking access: the caller did. Used to
+     * group single creates into one commit.
+     */
+    public List<Declaration> insertAll(List<Declaration> declarations) {
+        var byShard = new LinkedHashMap<String, List<Integer>>();
+        for (var index = 0; index < declarations.size(); index++) {
+            byShard.computeIfAbsent(shardRouter.shardOf(declarations.get(index).getInstanceId()), shard -> new ArrayList<>()).add(index);
+        }
+        byShard.forEach((shard, indexes) -> shardRouter.inShard(shard, false, () -> createAll(declarations, indexes)));
+        return declarations;
+    }
+
+    private List<BatchItemResult> createAll(List<Declaration> declarations, List<Integer> indexes) {
+        var results = new ArrayList<BatchItemResult>(indexes.size());
+        var changes = new ArrayList<DeclarationChange>(indexes.size());
+        var pending = 0;
+        for (var index : indexes) {
+            var declaration = declarations.get(index);
+            declaration.setId(0);
+            entityManager.persist(declaration);
+            results.add(succeeded(index, declaration.getId(), HttpStatus.CREATED));
+            changes.add(new DeclarationChange(null, snapshot(declaration)));
+            if (++pending % jdbcBatchSize == 0) {
+                flushAndClear();
+            }
+        }
+        publishChanges(changes);
+        flushAndClear();
+        return results;
+    }
+
+    /**
+     * Updates all declarations the user is allowed to update, in one transaction per shard. The current rows are
+     * loaded with one query per chunk of ids, ownership is checked against them in memory and the changes are written
+     * as JDBC batches. When the batch spans shards and one of them fails, only its declarations are reported as failed.
+     */
+    public List<BatchItemResult> updateAll(List<Declaration> declarations, Authentication authentication) {
+        checkBatchSize(declarations);
+        var manager = SecurityHelperFunctions.isManagerOrAssistantManager(authentication);
+
+        var located = locate(declarations.stream().filter(Objects::nonNull).map(Declaration::getId).collect(Collectors.toList()));
+        var results = new ArrayList<BatchItemResult>(declarations.size());
+        var byShard = new LinkedHashMap<String, List<Integer>>();
+        for (var index = 0; index < declarations.size(); index++) {
+            var declaration = declarations.get(index);
+            if (declaration == null) {
+                results.add(failed(index, 0, HttpStatus.BAD_REQUEST, "Declaration is missing"));
+                continue;
+            }
+            // Unknown ids go to the first shard, which reports them as not found
+            byShard.computeIfAbsent(located.getOrDefault(declaration.getId(), shardRouter.getShards().get(0)),
+                    shard -> new ArrayList<>()).add(index);
+        }
+
+        results.addAll(inEveryShard(byShard, index -> declarations.get(index).getId(),
+                (shard, indexes) -> updateAll(shard, declarations, indexes, authentication, manager)));
+        results.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+        return results;
+    }
+
+    /**
+     * Runs the part of a batch of every shard in a transaction of its own. A shard that fails after another committed
+     * fails its own items only, so the results tell what was applied. A batch on a single shard fails as a whole.
+     */
+    private List<BatchItemResult> inEveryShard(Map<String, List<Integer>> byShard, IntToLongFunction idOf,
+                                               BiFunction<String, List<Integer>, List<BatchItemResult>> work) {
+        var results = new ArrayList<BatchItemResult>();
+        for (var entry : byShard.entrySet()) {
+            var shard = entry.getKey();
+            try {
+                results.addAll(shardRouter.inShard(shard, false, () -> work.apply(shard, entry.getValue())));
+            } catch (RuntimeException e) {
+                if (byShard.size() == 1) {
+                    throw e;
+                }
+                log.error("Batch part of shard {} failed, other shards are applied", shard, e);
+                var status = e instanceof ResponseStatusException
+                        ? ((ResponseStatusException) e).getStatus()
+                        : HttpStatus.INTERNAL_SERVER_ERROR;
+                entry.getValue().forEach(index -> results.add(failed(index, idOf.applyAsLong(index), status,
+                        "Not applied, storing it failed")));
+            }
+        }
+        return results;
+    }
+
+    private List<BatchItemResult> updateAll(String shard, List<Declaration> declarations, List<Integer> indexes,
+                                            Authentication authentication, boolean manager) {
+        var ids = indexes.stream().map(index -> declarations.get(index).getId()).collect(Collectors.toList());
+        var existing = new HashMap<Long, Declaration>(ids.size() * 2);
+        for (var from = 0; from < ids.size(); from += maxPageSize) {
+            declarationRepository.findAllById(ids.subList(from, Math.min(from + maxPageSize, ids.size())))
+                    .forEach(declaration -> existing.put(declaration.getId(), declaration));
+        }
+
+        var results = new ArrayList<BatchItemResult>(indexes.size());
+        var changes = new ArrayList<DeclarationChange>(indexes.size());
+        var updated = new HashSet<Long>();
+        var pending = new ArrayList<Declaration>(jdbcBatchSize);
+        for (var index : indexes) {
+            var declaration = declarations.get(index);
+            if (!updated.add(declaration.getId())) {
+                results.add(failed(index, declaration.getId(), HttpStatus.BAD_REQUEST, "Declaration occurs more than once in the batch"));
+                continue;
+            }
+            var current = existing.remove(declaration.getId());
+            if (current == null) {
+                results.add(failed(index, declaration.getId(), HttpStatus.NOT_FOUND, "Can't find declaration for given Id"));
+                continue;
+            }
+            if (!manager && !isOwnedBy(authentication, current, declaration)) {
+                results.add(failed(index, declaration.getId(), HttpStatus.FORBIDDEN, "Access is denied"));
+                continue;
+            }
+            if (current.getVersion() != declaration.getVersion()) {
+                results.add(failed(index, declaration.getId(), HttpStatus.CONFLICT, "Declaration was changed by someone else"));
+                continue;
+            }
+            if (!shardRouter.shardOf(declaration.getInstanceId()).equals(shard)) {
+                results.add(failed(index, declaration.getId(), HttpStatus.CONFLICT, MOVED_SHARD));
+                continue;
+            }
+
+            var before = snapshot(current);
+            copy(declaration, current);
+            results.add(succeeded(index, current.getId(), HttpStatus.OK));
+            changes.add(new DeclarationChange(before, snapshot(current)));
+            pending.add(current);
+            if (pending.size() == jdbcBatchSize) {
+                flushAndDetach(pending);
+            }
+        }
+        publishChanges(changes);
+        flushAndDetach(pending);
+        return results;
+    }
+
+    /**
+     * Applies a JSON merge patch with a single UPDATE of just the patched columns. The patch has to contain the
+     * version it is based on, the update only matches that version so a concurrent change results in a conflict
+     * instead of being overwritten. Employees can only patch their own declarations and can't approve them.
+     * The current row is read first by primary key, the summaries need its old values.
+     *
+     * @return the new version of the declaration
+     */
+    public long patch(long id, JsonNode patch, Authentication authentication) {
+        if (!patch.isObject()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Patch must be a JSON object");
+        }
+        var version = patch.get("version");
+        if (version == null || !version.isIntegralNumber()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Patch must contain the version it is based on");
+        }
+        var manager = SecurityHelperFunctions.isManagerOrAssistantManager(authentication);
+        var shard = shardOfId(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Can't find declaration for given Id"));
+        return shardRouter.inShard(shard, false, () -> patch(shard, id, patch, version.longValue(), manager, authentication));
+    }
+
+    private long patch(String shard, long id, JsonNode patch, long version, boolean manager, Authentication authentication) {
+        // Read past the cache, the old values have to be current
+        var current = (manager ? declarationRepository.findById(id) : declarationRepository.findByIdAndEmployee(id, authentication.getName()))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Can't find declaration for given Id"));
+        entityManager.detach(current);
+        var before = snapshot(current);
+        var after = snapshot(current);
+
+        var builder = entityManager.getCriteriaBuilder();
+        var update = builder.createCriteriaUpdate(Declaration.class);
+        var root = update.from(Declaration.class);
+
+        var fields = patch.fields();
+        var changes = 0;
+        while (fields.hasNext()) {
+            var field = fields.next();
+            var name = field.getKey();
+            var value = field.getValue();
+            if (name.equals("version")) {
+                continue;
+            }
+            if (APPROVAL_FIELDS.contains(name) && !manager) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only managers can approve declarations");
+            }
+            switch (name) {
+                case "costs":
+                    after.setCosts(requireValue(name, value, value.isNumber()).doubleValue());
+                    update.set(root.<Double>get(name), after.getCosts());
+                    break;
+                case "approvedLocal":
+                    after.setApprovedLocal(requireValue(name, value, value.isBoolean()).booleanValue());
+                    update.set(root.<Boolean>get(name), after.isApprovedLocal());
+                    break;
+                case "approvedGlobal":
+                    after.setApprovedGlobal(requireValue(name, value, value.isBoolean()).booleanValue());
+                    update.set(root.<Boolean>get(name), after.isApprovedGlobal());
+                    break;
+                case "imageId":
+                    after.setImageId(requireValue(name, value, value.isIntegralNumber()).longValue());
+                    update.set(root.<Long>get(name), after.getImageId());
+                    break;
+                case "instanceId":
+                    if (value.isNull()) {
+                        after.setInstanceId(null);
+                        update.set(root.<String>get(name), builder.nullLiteral(String.class));
+                    } else {
+                        after.setInstanceId(requireValue(name, value, value.isTextual()).textValue());
+                        update.set(root.<String>get(name), after.getInstanceId());
+                    }
+                    break;
+                default:
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Field " + name + " can't be patched");
+            }
+            changes++;
+        }
+        if (changes == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Patch doesn't change anything");
+        }
+        if (!shardRouter.shardOf(after.getInstanceId()).equals(shard)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, MOVED_SHARD);
+        }
+
+        after.setChangedAt(System.currentTimeMillis());
+        update.set(root.<Long>get("changedAt"), after.getChangedAt());
+        update.set(root.<Long>get("version"), builder.sum(root.<Long>get("version"), 1L));
+        update.where(builder.equal(root.get("id"), id), builder.equal(root.get("version"), version));
+
+        // The version check makes sure nobody changed the row since it was read
+        if (current.getVersion() != version || entityManager.createQuery(update).executeUpdate() == 0) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Declaration was changed by someone else");
+        }
+        after.setVersion(version + 1);
+        publishChanges(List.of(new DeclarationChange(before, after)));
+        return after.getVersion();
+    }
+
+    private static JsonNode requireValue(String field, JsonNode value, boolean valid) {
+        if (!valid) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid value for field " + field);
+        }
+        return value;
+    }
+
+    /**
+     * Approves the selected declarations with a single conditional update per shard and returns the ids of the
+     * declarations that were approved by this call. At most the max batch size is approved per shard, the result
+     * tells when there are more left. A shard that fails doesn't undo the approvals on the others, the result lists it
+     * and the request can be repeated.
+     */
+    public ApprovalResult approve(ApprovalRequest request) {
+        if (request.getLevel() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Approval level is required");
+        }
+        var hasIds = request.getIds() != null && !request.getIds().isEmpty();
+        if (!hasIds && request.getEmployee() == null && request.getInstanceId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Select declarations by ids, employee or instanceId");
+        }
+        if (hasIds && request.getIds().size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "An approval can contain at most " + maxBatchSize + " ids");
+        }
+
+        if (request.getInstanceId() != null) {
+            return shardRouter.inShard(shardRouter.shardOf(request.getInstanceId()), false, () -> approveInShard(request));
+        }
+        var results = shardRouter.scatter(false, shard -> approveInShard(request), (shard, e) -> {
+            if (!shardRouter.isSharded()) {
+                throw e;
+            }
+            log.error("Approval failed on shard {}, other shards are approved", shard, e);
+            return new ApprovalResult(List.of(), false, List.of(shard));
+        });
+        return ApprovalResult.builder()
+                .ids(results.stream()
+                        .flatMap(result -> result.getIds().stream())
+                        .sorted()
+                        .collect(Collectors.toList()))
+                .more(results.stream().anyMatch(ApprovalResult::isMore))
+                .failedShards(results.stream()
+                        .flatMap(result -> result.getFailedShards().stream())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    private ApprovalResult approveInShard(ApprovalRequest request) {
+        // One row past the limit tells if there are more, it is locked but left alone
+        var declarations = declarationRepository.lockUnapproved(request, maxBatchSize + 1);
+        var more = declarations.size() > maxBatchSize;
+        if (more) {
+            declarations = declarations.subList(0, maxBatchSize);
+        }
+        if (declarations.isEmpty()) {
+            return new ApprovalResult(List.of(), false, List.of());
+        }
+
+        var ids = new ArrayList<Long>(declarations.size());
+        var changes = new ArrayList<DeclarationChange>(declarations.size());
+        var changedAt = System.currentTimeMillis();
+        for (var declaration : declarations) {
+            var after = snapshot(declaration);
+            after.setChangedAt(changedAt);
+            if (request.getLevel() == ApprovalLevel.LOCAL) {
+                after.setApprovedLocal(true);
+            } else {
+                after.setApprovedGlobal(true);
+            }
+            after.setVersion(declaration.getVersion() + 1);
+            ids.add(declaration.getId());
+            changes.add(new DeclarationChange(snapshot(declaration), after));
+        }
+
+        if (request.getLevel() == ApprovalLevel.LOCAL) {
+            declarationRepository.approveLocal(ids, changedAt);
+        } else {
+            declarationRepository.approveGlobal(ids, changedAt);
+        }
+        publishChanges(changes);
+        return new ApprovalResult(ids, more, List.of());
+    }
+
+    /**
+     * The shard a declaration is stored on, found by asking all of them.
+     */
+    private Optional<String> shardOfId(long id) {
+        if (!shardRouter.isSharded()) {
+            return Optional.of(shardRouter.getShards().get(0));
+        }
+        return shardRouter.findFirst(shard -> declarationRepository.existsById(id) ? Optional.of(shard) : Optional.empty());
+    }
+
+    /**
+     * The shards of the declarations that exist, with one query per shard and chunk of ids.
+     */
+    private Map<Long, String> locate(List<Long> ids) {
+        if (!shardRouter.isSharded()) {
+            return Map.of();
+        }
+        var found = shardRouter.scatter(true, shard -> {
+            var existing = new ArrayList<Long>();
+            for (var from = 0; from < ids.size(); from += maxPageSize) {
+                existing.addAll(declarationRepository.findExistingIds(ids.subList(from, Math.min(from + maxPageSize, ids.size()))));
+            }
+            return existing;
+        });
+        var located = new HashMap<Long, String>(ids.size() * 2);
+        for (var index = 0; index < found.size(); index++) {
+            var shard = shardRouter.getShards().get(index);
+            found.get(index).forEach(id -> located.put(id, shard));
+        }
+        return located;
+    }
+
+    /**
+     * An image is stored on the shard of the instance it was uploaded for, which isn't always the shard of its
+     * declaration. The join can't find those, they are looked up with one query per shard.
+     */
+    private List<ExpandedDeclaration> withImagesOfOtherShards(List<ExpandedDeclaration> declarations) {
+        if (!shardRouter.isSharded()) {
+            return declarations;
+        }
+        var missing = declarations.stream()
+                .filter(expanded -> expanded.getImage() == null && expanded.getDeclaration().getImageId() != 0)
+                .map(expanded -> expanded.getDeclaration().getImageId())
+                .distinct()
+                .collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return declarations;
+        }
+        var images = new HashMap<Long, Image>(missing.size() * 2);
+        shardRouter.scatter(true, shard -> {
+            var found = new ArrayList<Image>();
+            for (var from = 0; from < missing.size(); from += maxPageSize) {
+                imageRepository.findAllById(missing.subList(from, Math.min(from + maxPageSize, missing.size()))).forEach(found::add);
+            }
+            return found;
+        }).forEach(found -> found.forEach(image -> images.put(image.getId(), image)));
+        for (var expanded : declarations) {
+            Optional.ofNullable(images.get(expanded.getDeclaration().getImageId()))
+                    .filter(image -> Objects.equals(image.getEmployee(), expanded.getDeclaration().getEmployee()))
+                    .ifPresent(image -> expanded.setImage(ImageMetadata.of(image)));
+        }
+        return declarations;
+    }
+
+    /**
+     * The declarations of all shards in id order, the answer of a single shard is kept as it is.
+     */
+    private static List<Declaration> merge(List<List<Declaration>> perShard) {
+        if (perShard.size() == 1) {
+            return perShard.get(0);
+        }
+        return perShard.stream()
+                .flatMap(Collection::stream)
+                .sorted(Comparator.comparingLong(Declaration::getId))
+                .collect(Collectors.toList());
+    }
+
+    private void publishChanges(List<DeclarationChange> changes) {
+        if (!changes.isEmpty()) {
+            eventPublisher.publishEvent(new DeclarationChangedEvent(changes));
+        }
+    }
+
+    private static Declaration snapshot(Declaration declaration) {
+        return declaration.toBuilder().build();
+    }
+
+    private void checkBatchSize(List<Declaration> declarations) {
+        if (declarations.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "A batch can contain at most " + maxBatchSize + " declarations");
+        }
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Rows that are still waiting to be updated have to stay managed, so only the flushed ones are detached.
+     */
+    private void flushAndDetach(List<Declaration> flushed) {
+        entityManager.flush();
+        flushed.forEach(entityManager::detach);
+        flushed.clear();
+    }
+
+    private static boolean isOwnedBy(Authentication authentication, Declaration current, Declaration update) {
+        return authentication.getName().equals(current.getEmployee())
+                && authentication.getName().equals(update.getEmployee());
+    }
+
+    private static void copy(Declaration source, Declaration target) {
+        target.setCosts(source.getCosts());
+        target.setApprovedLocal(source.isApprovedLocal());
+        target.setApprovedGlobal(source.isApprovedGlobal());
+        target.setEmployee(source.getEmployee());
+        target.setInstanceId(source.getInstanceId());
+        target.setImageId(source.getImageId());
+    }
+
+    private static BatchItemResult succeeded(int index, long id, HttpStatus status) {
+        return BatchItemResult.builder().index(index).id(id).status(status.value()).build();
+    }
+
+    private static BatchItemResult failed(int index, long id, HttpStatus status, String error) {
+        return BatchItemResult.builder().index(index).id(id).status(status.value()).error(error).build();
+    }
+
+    private static String encodeCursor(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Long.toString(lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
     }
 }
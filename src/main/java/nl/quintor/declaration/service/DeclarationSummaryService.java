@@ -0,0 +1,248 @@
+package nl.quintor.declaration.service;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.quintor.declaration.datasource.ShardRouter;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.model.DeclarationSummary;
+import nl.quintor.declaration.model.SummaryDimension;
+import nl.quintor.declaration.repository.DeclarationSummaryRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Keeps a {@link DeclarationSummary} per employee and per instance up to date, so dashboards read a row per group
+ * instead of every declaration.
+ */
+@Slf4j
+@Service
+public class DeclarationSummaryService {
+
+    private static final Comparator<DeclarationSummary.Key> KEY_ORDER = Comparator
+            .comparing(DeclarationSummary.Key::getDimension)
+            .thenComparing(DeclarationSummary.Key::getGroupKey);
+
+    // Sums are recomputed in a different order than they were built up in, don't call rounding errors drift
+    private static final double COSTS_TOLERANCE = 0.005;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private DeclarationSummaryRepository summaryRepository;
+    private ShardRouter shardRouter;
+    private boolean reconcileOnStartup;
+
+    public DeclarationSummaryService(DeclarationSummaryRepository summaryRepository, ShardRouter shardRouter,
+                                     @Value("${declaration.summary.reconcile-on-startup:false}") boolean reconcileOnStartup) {
+        this.summaryRepository = summaryRepository;
+        this.shardRouter = shardRouter;
+        this.reconcileOnStartup = reconcileOnStartup;
+    }
+
+    /**
+     * Every shard summarizes its own declarations. An employee can have declarations on several shards, their
+     * summaries are added up.
+     */
+    public List<DeclarationSummary> findAll(SummaryDimension dimension) {
+        var perShard = shardRouter.scatter(true, shard -> summaryRepository.findAllByDimensionOrderByGroupKey(dimension));
+        if (perShard.size() == 1) {
+            return perShard.get(0);
+        }
+        var merged = new TreeMap<String, DeclarationSummary>();
+        perShard.forEach(summaries -> summaries.forEach(summary -> merged.merge(summary.getGroupKey(),
+                summary, DeclarationSummaryService::add)));
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Adds the changes to the summaries in the transaction that made them, so a rolled back write never shows up in
+     * a summary. Rows are updated in key order, concurrent writers lock them in the same order and can't deadlock.
+     */
+    @EventListener
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onDeclarationChanged(DeclarationChangedEvent event) {
+        var deltas = new TreeMap<DeclarationSummary.Key, DeclarationSummary>(KEY_ORDER);
+        for (var change : event.getChanges()) {
+            if (change.getBefore() != null) {
+                addTo(deltas, change.getBefore(), -1);
+            }
+            if (change.getAfter() != null) {
+                addTo(deltas, change.getAfter(), 1);
+            }
+        }
+        deltas.values().forEach(this::apply);
+    }
+
+    /**
+     * Fills the summaries of existing declarations when enabled. Every instance starts it, so it is meant for one
+     * instance only, e.g. the first deployment of summaries.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (reconcileOnStartup) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Recomputes every summary from the declarations and repairs the ones that drifted, e.g. because of rows
+     * changed outside of this service. Instances running it at the same time wait for each other per summary, but
+     * the work is repeated: disable the cron with "-" on all but one instance.
+     */
+    @Scheduled(cron = "${declaration.summary.reconcile-cron:0 30 3 * * *}")
+    public void reconcile() {
+        shardRouter.getShards().forEach(this::reconcile);
+    }
+
+    private void reconcile(String shard) {
+        for (var dimension : SummaryDimension.values()) {
+            var groupKeys = shardRouter.inShard(shard, true, () -> {
+                var keys = new TreeSet<String>(entityManager
+                        .createQuery("select distinct d." + dimension.getProperty() + " from Declaration d where d."
+                                + dimension.getProperty() + " is not null", String.class)
+                        .getResultList());
+                summaryRepository.findAllByDimensionOrderByGroupKey(dimension)
+                        .forEach(summary -> keys.add(summary.getGroupKey()));
+                return keys;
+            });
+
+            var repaired = groupKeys.stream()
+                    .filter(groupKey -> shardRouter.inShard(shard, false, () -> reconcile(dimension, groupKey)))
+                    .count();
+            if (repaired > 0) {
+                log.warn("Repaired {} of {} {} summaries on shard {}", repaired, groupKeys.size(), dimension, shard);
+            }
+        }
+    }
+
+    private boolean reconcile(SummaryDimension dimension, String groupKey) {
+        // Lock the summary before counting: writers of this group wait until we're done and everything they
+        // committed before is part of the count
+        createIfAbsent(dimension, groupKey);
+        var current = summaryRepository.findByDimensionAndGroupKey(dimension, groupKey);
+        if (current.isEmpty()) {
+            // Removed by a concurrent reconcile, it found no declarations
+            return false;
+        }
+        var summary = current.get();
+        var actual = count(dimension, groupKey);
+
+        if (actual.getDeclarationCount() == 0) {
+            summaryRepository.delete(summary);
+            return !matches(summary, actual);
+        }
+        if (matches(summary, actual)) {
+            return false;
+        }
+        summary.setDeclarationCount(actual.getDeclarationCount());
+        summary.setTotalCosts(actual.getTotalCosts());
+        summary.setApprovedLocalCount(actual.getApprovedLocalCount());
+        summary.setApprovedGlobalCount(actual.getApprovedGlobalCount());
+        return true;
+    }
+
+    private DeclarationSummary count(SummaryDimension dimension, String groupKey) {
+        var totals = entityManager.createQuery("select count(d), sum(d.costs), "
+                + "sum(case when d.approvedLocal = true then 1 else 0 end), "
+                + "sum(case when d.approvedGlobal = true then 1 else 0 end) "
+                + "from Declaration d where d." + dimension.getProperty() + " = :groupKey", Object[].class)
+                .setParameter("groupKey", groupKey)
+                .getSingleResult();
+        return DeclarationSummary.builder()
+                .dimension(dimension)
+                .groupKey(groupKey)
+                .declarationCount(valueOf(totals[0]).longValue())
+                .totalCosts(valueOf(totals[1]).doubleValue())
+                .approvedLocalCount(valueOf(totals[2]).longValue())
+                .approvedGlobalCount(valueOf(totals[3]).longValue())
+                .build();
+    }
+
+    private void apply(DeclarationSummary delta) {
+        if (matches(delta, new DeclarationSummary())) {
+            return;
+        }
+        createIfAbsent(delta.getDimension(), delta.getGroupKey());
+        var updated = summaryRepository.addDelta(delta.getDimension(), delta.getGroupKey(), delta.getDeclarationCount(),
+                delta.getTotalCosts(), delta.getApprovedLocalCount(), delta.getApprovedGlobalCount());
+        if (updated == 0) {
+            // A reconcile removed the empty summary in between, our update locked its spot so no one else can add it
+            entityManager.persist(delta);
+        }
+    }
+
+    /**
+     * Adds an empty summary in a transaction of its own, so concurrent first writers of a group don't both insert it
+     * and fail on the duplicate. Checked with a plain read first: a locking one would block our own insert on MySQL.
+     */
+    private void createIfAbsent(SummaryDimension dimension, String groupKey) {
+        if (summaryRepository.existsById(new DeclarationSummary.Key(dimension, groupKey))) {
+            return;
+        }
+        try {
+            // Persist, not save: that merges and would reset a summary a concurrent writer added and updated. The
+            // insert happens on commit, which translates a duplicate key
+            shardRouter.inSeparateTransaction(() -> {
+                entityManager.persist(DeclarationSummary.builder().dimension(dimension).groupKey(groupKey).build());
+                return null;
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Summary {} {} was added concurrently", dimension, groupKey);
+        }
+    }
+
+    private static void addTo(Map<DeclarationSummary.Key, DeclarationSummary> deltas, Declaration declaration, int sign) {
+        for (var dimension : SummaryDimension.values()) {
+            var groupKey = dimension.keyOf(declaration);
+            if (groupKey == null) {
+                continue;
+            }
+            var delta = deltas.computeIfAbsent(new DeclarationSummary.Key(dimension, groupKey),
+                    key -> DeclarationSummary.builder().dimension(dimension).groupKey(groupKey).build());
+            delta.setDeclarationCount(delta.getDeclarationCount() + sign);
+            delta.setTotalCosts(delta.getTotalCosts() + sign * declaration.getCosts());
+            if (declaration.isApprovedLocal()) {
+                delta.setApprovedLocalCount(delta.getApprovedLocalCount() + sign);
+            }
+            if (declaration.isApprovedGlobal()) {
+                delta.setApprovedGlobalCount(delta.getApprovedGlobalCount() + sign);
+            }
+        }
+    }
+
+    private static DeclarationSummary add(DeclarationSummary summary, DeclarationSummary other) {
+        return DeclarationSummary.builder()
+                .dimension(summary.getDimension())
+                .groupKey(summary.getGroupKey())
+                .declarationCount(summary.getDeclarationCount() + other.getDeclarationCount())
+                .totalCosts(summary.getTotalCosts() + other.getTotalCosts())
+                .approvedLocalCount(summary.getApprovedLocalCount() + other.getApprovedLocalCount())
+                .approvedGlobalCount(summary.getApprovedGlobalCount() + other.getApprovedGlobalCount())
+                .build();
+    }
+
+    private static boolean matches(DeclarationSummary summary, DeclarationSummary other) {
+        return summary.getDeclarationCount() == other.getDeclarationCount()
+                && Math.abs(summary.getTotalCosts() - other.getTotalCosts()) < COSTS_TOLERANCE
+                && summary.getApprovedLocalCount() == other.getApprovedLocalCount()
+                && summary.getApprovedGlobalCount() == other.getApprovedGlobalCount();
+    }
+
+    private static Number valueOf(Object total) {
+        return total == null ? 0 : (Number) total;
+    }
+}
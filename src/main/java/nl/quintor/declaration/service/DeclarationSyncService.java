@@ -0,0 +1,177 @@
+package nl.quintor.declaration.service;
+
+import nl.quintor.declaration.datasource.ShardRouter;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.model.DeclarationDelta;
+import nl.quintor.declaration.model.DeclarationTombstone;
+import nl.quintor.declaration.repository.DeclarationRepository;
+import nl.quintor.declaration.repository.DeclarationTombstoneRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Lets clients keep their copy of the declarations current by fetching what changed since their previous sync,
+ * instead of the full list every time.
+ */
+@Service
+public class DeclarationSyncService {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private DeclarationRepository declarationRepository;
+    private DeclarationTombstoneRepository tombstoneRepository;
+    private ShardRouter shardRouter;
+    private long overlapMillis;
+    private long retentionMillis;
+
+    public DeclarationSyncService(DeclarationRepository declarationRepository,
+                                  DeclarationTombstoneRepository tombstoneRepository,
+                                  ShardRouter shardRouter,
+                                  @Value("${declaration.sync.overlap:10s}") Duration overlap,
+                                  @Value("${declaration.sync.tombstone-retention:30d}") Duration retention) {
+        this.declarationRepository = declarationRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.shardRouter = shardRouter;
+        this.overlapMillis = overlap.toMillis();
+        this.retentionMillis = retention.toMillis();
+    }
+
+    /**
+     * The declarations of the employee, or all when {@code null}, changed after the cursor and the ids of the ones
+     * that left the list. Without a cursor every declaration is returned.
+     * A change shows up once its transaction commits, which can be after later changes. The next cursor lies
+     * {@code declaration.sync.overlap} before this sync so those aren't missed, recent changes can be sent twice.
+     */
+    public DeclarationDelta findChanges(String employee, String cursor) {
+        var now = System.currentTimeMillis();
+        var since = decodeCursor(cursor);
+        if (since > 0 && since < now - retentionMillis) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Cursor is too old, reload all declarations");
+        }
+
+        var changed = shardRouter.scatter(true, shard -> since == 0 ? findAll(employee) : employee == null
+                ? declarationRepository.findViewsChangedSince(since)
+                : declarationRepository.findViewsByEmployeeChangedSince(employee, since)).stream()
+                .flatMap(Collection::stream)
+                .sorted(Comparator.comparingLong(Declaration::getId))
+                .collect(Collectors.toList());
+        var changedIds = changed.stream().map(Declaration::getId).collect(Collectors.toSet());
+        var removed = since == 0 ? List.<Long>of() : shardRouter.scatter(true, shard -> employee == null
+                ? tombstoneRepository.findDeletedIds(since)
+                : tombstoneRepository.findRemovedIds(employee, since)).stream()
+                .flatMap(Collection::stream)
+                // Declarations that came back are part of the changes
+                .filter(id -> !changedIds.contains(id))
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+
+        return DeclarationDelta.builder()
+                .changed(changed)
+                .removed(removed)
+                .cursor(encodeCursor(Math.max(since, now - overlapMillis)))
+                .build();
+    }
+
+    /**
+     * Everything without a cursor, also rows that never changed since changedAt was added and are still at 0.
+     */
+    private List<Declaration> findAll(String employee) {
+        return employee == null ? declarationRepository.findAllViews() : declarationRepository.findViewsByEmployee(employee);
+    }
+
+    /**
+     * Changes whenever a declaration of the employee, or any when {@code null}, is created, changed or leaves the
+     * list. Made of the number of declarations, the latest changedAt and the number of tombstones, which indexes
+     * answer without reading the declarations, to answer conditional requests. Changes within the same millisecond as
+     * the latest one are only noticed with the next change.
+     */
+    public String versionOf(String employee) {
+        var totals = shardRouter.scatter(true, shard -> {
+            var declarations = entityManager.createQuery("select count(d), coalesce(max(d.changedAt), 0) "
+                    + "from Declaration d" + (employee == null ? "" : " where d.employee = :employee"), Object[].class);
+            var tombstones = entityManager.createQuery("select count(t) from DeclarationTombstone t"
+                    + (employee == null ? "" : " where t.employee = :employee"), Long.class);
+            if (employee != null) {
+                declarations.setParameter("employee", employee);
+                tombstones.setParameter("employee", employee);
+            }
+            var result = declarations.getSingleResult();
+            return new long[]{((Number) result[0]).longValue(), ((Number) result[1]).longValue(), tombstones.getSingleResult()};
+        });
+        long count = 0;
+        long changedAt = 0;
+        long removed = 0;
+        for (var shardTotals : totals) {
+            count += shardTotals[0];
+            changedAt = Math.max(changedAt, shardTotals[1]);
+            removed += shardTotals[2];
+        }
+        return count + "-" + changedAt + "-" + removed;
+    }
+
+    /**
+     * Leaves a tombstone, in the transaction of the change, for every declaration that leaves the list of its
+     * employee.
+     */
+    @EventListener
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onDeclarationChanged(DeclarationChangedEvent event) {
+        var now = System.currentTimeMillis();
+        for (var change : event.getChanges()) {
+            var before = change.getBefore();
+            var after = change.getAfter();
+            if (before != null && (after == null || !Objects.equals(before.getEmployee(), after.getEmployee()))) {
+                entityManager.persist(DeclarationTombstone.builder()
+                        .declarationId(before.getId())
+                        .employee(before.getEmployee())
+                        .deleted(after == null)
+                        .removedAt(now)
+                        .build());
+            }
+        }
+    }
+
+    /**
+     * Clients that didn't sync within the retention get a 410 and reload everything, older tombstones aren't needed.
+     */
+    @Scheduled(cron = "${declaration.sync.prune-cron:0 45 3 * * *}")
+    public void pruneTombstones() {
+        var before = System.currentTimeMillis() - retentionMillis;
+        shardRouter.getShards().forEach(shard -> shardRouter.inShard(shard, false, () -> tombstoneRepository.deleteRemovedBefore(before)));
+    }
+
+    private static String encodeCursor(long changedAt) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Long.toString(changedAt).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package nl.quintor.declaration.service;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.quintor.declaration.datasource.ShardRouter;
+import nl.quintor.declaration.model.Declaration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Creates declarations, in a transaction per create by default. With group commit enabled creates are queued and a
+ * writer thread inserts what's waiting in one transaction, up to {@code max-batch-size} declarations or until
+ * {@code max-delay} after the first one, so many creates share a commit. A future only completes once its
+ * declaration is committed, an acknowledged create is as durable as before.
+ */
+@Slf4j
+@Service
+public class GroupCommitWriter {
+
+    private static final long POLL_MILLIS = 100;
+
+    private DeclarationService declarationService;
+    private ShardRouter shardRouter;
+    private boolean enabled;
+    private int maxBatchSize;
+    private long maxDelayNanos;
+    private BlockingQueue<PendingCreate> queue;
+    private Thread writer;
+    // Guards running together with the offer, so nothing is queued after stop() let the writer finish
+    private Object lifecycle = new Object();
+    private volatile boolean running;
+
+    public GroupCommitWriter(DeclarationService declarationService, ShardRouter shardRouter,
+                             @Value("${declaration.create.group-commit.enabled:false}") boolean enabled,
+                             @Value("${declaration.create.group-commit.max-batch-size:200}") int maxBatchSize,
+                             @Value("${declaration.create.group-commit.max-delay:5ms}") Duration maxDelay,
+                             @Value("${declaration.create.group-commit.queue-capacity:10000}") int queueCapacity) {
+        this.declarationService = declarationService;
+        this.shardRouter = shardRouter;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            running = true;
+            writer = new Thread(this::run, "declaration-group-commit");
+            writer.start();
+        }
+    }
+
+    /**
+     * Stops taking creates and writes the ones that are queued already. Creates the writer didn't get to, because it
+     * was interrupted, fail.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        synchronized (lifecycle) {
+            running = false;
+        }
+        if (writer != null) {
+            writer.join();
+            var leftovers = new ArrayList<PendingCreate>();
+            queue.drainTo(leftovers);
+            leftovers.forEach(pending -> pending.future.completeExceptionally(
+                    new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Declaration wasn't written, shutting down")));
+        }
+    }
+
+    public CompletableFuture<Declaration> create(Declaration declaration) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(declarationService.save(declaration));
+        }
+
+        var pending = new PendingCreate(declaration);
+        synchronized (lifecycle) {
+            if (!running || !queue.offer(pending)) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many declarations waiting to be written");
+            }
+        }
+        return pending.future;
+    }
+
+    private void run() {
+        var batch = new ArrayList<PendingCreate>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                var deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    var next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Group commit of {} declarations failed", batch.size(), e);
+                batch.forEach(pending -> pending.future.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * One transaction per shard. When it fails the declarations of that shard are written one by one, so a single
+     * bad declaration doesn't fail the others.
+     */
+    private void write(List<PendingCreate> batch) {
+        var byShard = batch.stream().collect(Collectors.groupingBy(
+                pending -> shardRouter.shardOf(pending.declaration.getInstanceId()), LinkedHashMap::new, Collectors.toList()));
+        for (var group : byShard.values()) {
+            try {
+                declarationService.insertAll(group.stream().map(pending -> pending.declaration).collect(Collectors.toList()));
+                group.forEach(pending -> pending.future.complete(pending.declaration));
+            } catch (RuntimeException e) {
+                group.forEach(this::writeAlone);
+            }
+        }
+    }
+
+    private void writeAlone(PendingCreate pending) {
+        try {
+            pending.declaration.setId(0);
+            pending.future.complete(declarationService.save(pending.declaration));
+        } catch (RuntimeException e) {
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    private static class PendingCreate {
+        private final Declaration declaration;
+        private final CompletableFuture<Declaration> future = new CompletableFuture<>();
+
+        private PendingCreate(Declaration declaration) {
+            this.declaration = declaration;
+        }
+    }
+}
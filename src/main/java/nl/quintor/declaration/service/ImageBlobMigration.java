@@ -0,0 +1,101 @@
+package nl.quintor.declaration.service;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.quintor.declaration.datasource.ShardRouter;
+import nl.quintor.declaration.model.Image;
+import nl.quintor.declaration.storage.BlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Moves the content of images uploaded before the blob store from their {@code file} column into the
+ * {@link BlobStore}. A one-off: add the columns with db/mysql/007-image-blob-columns.sql, start one instance with
+ * {@code image.migrate-blobs=true} and drop the column with db/mysql/008-image-drop-file.sql once it's done.
+ */
+@Slf4j
+@Service
+public class ImageBlobMigration {
+
+    private static final int BATCH_SIZE = 100;
+
+    private ShardRouter shardRouter;
+    private BlobStore blobStore;
+    private JdbcTemplate jdbcTemplate;
+    private boolean enabled;
+
+    public ImageBlobMigration(ShardRouter shardRouter, BlobStore blobStore, DataSource dataSource,
+                              @Value("${image.migrate-blobs:false}") boolean enabled) {
+        this.shardRouter = shardRouter;
+        this.blobStore = blobStore;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            migrate();
+        }
+    }
+
+    /**
+     * Moves the files of every shard and returns how many were moved. Every image is moved in a transaction of its
+     * own, an interrupted run continues with the images it didn't get to.
+     */
+    public long migrate() {
+        var migrated = shardRouter.getShards().stream().mapToLong(this::migrate).sum();
+        log.info("Moved {} image files to the blob store, the file column can be dropped", migrated);
+        return migrated;
+    }
+
+    private long migrate(String shard) {
+        var migrated = 0L;
+        var after = 0L;
+        List<Long> ids;
+        do {
+            var from = after;
+            ids = shardRouter.inShard(shard, false, () -> jdbcTemplate.queryForList(
+                    "select id from image where file is not null and content_key is null and id > ? order by id limit "
+                            + BATCH_SIZE, Long.class, from));
+            for (var id : ids) {
+                if (shardRouter.inShard(shard, false, () -> migrate(id))) {
+                    migrated++;
+                }
+                after = id;
+            }
+        } while (ids.size() == BATCH_SIZE);
+        return migrated;
+    }
+
+    private boolean migrate(long id) {
+        // Locked, so instances started with the migration at the same time don't store the same file twice
+        var moved = jdbcTemplate.query(
+                "select file_name, file from image where id = ? and file is not null and content_key is null for update",
+                (resultSet, row) -> {
+                    try (var content = new BufferedInputStream(resultSet.getBinaryStream("file"))) {
+                        var contentType = ContentTypeDetector.detect(content, resultSet.getString("file_name"));
+                        var blob = blobStore.put(content);
+                        return Image.builder()
+                                .contentKey(blob.getKey())
+                                .size(blob.getSize())
+                                .contentType(contentType)
+                                .build();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, id);
+        moved.forEach(image -> jdbcTemplate.update(
+                "update image set content_key = ?, size = ?, content_type = ?, file = null where id = ?",
+                image.getContentKey(), image.getSize(), image.getContentType(), id));
+        return !moved.isEmpty();
+    }
+}
@@ -1,25 +1,122 @@
 package nl.quintor.declaration.service;
 
+import nl.quintor.declaration.cluster.ClusterCacheInvalidator;
+import nl.quintor.declaration.config.CacheConfig;
+import nl.quintor.declaration.datasource.ShardRouter;
 import nl.quintor.declaration.model.Image;
 import nl.quintor.declaration.repository.ImageRepository;
+import nl.quintor.declaration.storage.BlobStore;
+import nl.quintor.declaration.storage.BlobTooLargeException;
+import nl.quintor.declaration.storage.MaxSizeInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.util.List;
 import java.util.Optional;
 
 @Service
 public class ImageService {
 
     private ImageRepository imageRepository;
+    private ShardRouter shardRouter;
+    private BlobStore blobStore;
+    private ClusterCacheInvalidator clusterCacheInvalidator;
+    private long maxUploadSize;
 
-    public ImageService(ImageRepository imageRepository) {
+    public ImageService(ImageRepository imageRepository, ShardRouter shardRouter, BlobStore blobStore,
+                        ClusterCacheInvalidator clusterCacheInvalidator,
+                        @Value("${image.upload.max-size:20MB}") DataSize maxUploadSize) {
         this.imageRepository = imageRepository;
+        this.shardRouter = shardRouter;
+        this.blobStore = blobStore;
+        this.clusterCacheInvalidator = clusterCacheInvalidator;
+        this.maxUploadSize = maxUploadSize.toBytes();
     }
 
+    /**
+     * Finds the metadata of an image, the file itself is written by {@link #transferContent}. The id doesn't tell the
+     * shard, all of them are asked.
+     */
     public Optional<Image> findById(long id ) {
-        return imageRepository.findById(id);
+        return shardRouter.findFirst(shard -> imageRepository.findById(id));
     }
 
+    /**
+     * The employee owning the image, looked up without loading the rest of the image. Owners don't change after
+     * upload, so the answer is cached.
+     */
+    @Cacheable(cacheNames = CacheConfig.IMAGE_OWNERS, unless = "#result == null")
+    public Optional<String> findOwnerById(long id) {
+        return shardRouter.findFirst(shard -> imageRepository.findEmployeeById(id));
+    }
+
+    /**
+     * Whether the content of the image is in the blob store, checked before a response is committed to it.
+     */
+    public boolean hasContent(Image image) {
+        return image.getContentKey() != null && blobStore.exists(image.getContentKey());
+    }
+
+    /**
+     * Writes {@code count} bytes of the image content, starting at {@code position}, without buffering the
+     * whole file in memory.
+     */
+    public void transferContent(Image image, long position, long count, OutputStream outputStream) throws IOException {
+        blobStore.transferTo(image.getContentKey(), position, count, Channels.newChannel(outputStream));
+    }
+
+    /**
+     * Saves the image with its file, if any. The content fields only come from the blob store: without a file the
+     * image keeps the content it has, a new one has none.
+     */
     public Image save(Image image) {
-        return imageRepository.save(image);
+        if (image.getFile() != null) {
+            return save(image, new ByteArrayInputStream(image.getFile()));
+        }
+        var stored = image.getId() == 0 ? Optional.<Image>empty() : findById(image.getId());
+        image.setContentKey(stored.map(Image::getContentKey).orElse(null));
+        image.setSize(stored.map(Image::getSize).orElse(0L));
+        image.setContentType(stored.map(Image::getContentType).orElse(null));
+        return saveMetadata(image);
+    }
+
+    /**
+     * Streams the content to the blob store, hashing and counting it on the way, and saves the metadata.
+     */
+    public Image save(Image image, InputStream content) {
+        try {
+            var buffered = new BufferedInputStream(content);
+            image.setContentType(ContentTypeDetector.detect(buffered, image.getFileName()));
+
+            var blob = blobStore.put(new MaxSizeInputStream(buffered, maxUploadSize));
+            image.setContentKey(blob.getKey());
+            image.setSize(blob.getSize());
+        } catch (BlobTooLargeException e) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        image.setFile(null);
+        return saveMetadata(image);
+    }
+
+    /**
+     * Saving with an existing id can change the owner, so the cached owner is evicted on every instance.
+     */
+    private Image saveMetadata(Image image) {
+        var saved = shardRouter.inShard(shardRouter.shardOf(image.getInstanceId()), false, () -> imageRepository.save(image));
+        clusterCacheInvalidator.invalidate(CacheConfig.IMAGE_OWNERS, List.of(saved.getId()));
+        return saved;
     }
 }
@@ -0,0 +1,160 @@
+package nl.quintor.declaration.service;
+
+import nl.quintor.declaration.model.Image;
+import nl.quintor.declaration.model.ImageVariant;
+import nl.quintor.declaration.storage.BlobStore;
+import nl.quintor.declaration.storage.DerivativeCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Produces downscaled variants of receipt images, e.g. thumbnails for the approval list. Variants are cached by
+ * content hash and width, and concurrent requests for the same variant share a single rendering.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final int MIN_WIDTH = 16;
+
+    private BlobStore blobStore;
+    private DerivativeCache derivativeCache;
+    private int maxWidth;
+    private long maxPixels;
+
+    private ConcurrentHashMap<String, CompletableFuture<ImageVariant>> inProgress = new ConcurrentHashMap<>();
+
+    public ImageVariantService(BlobStore blobStore, DerivativeCache derivativeCache,
+                               @Value("${image.variant.max-width:1024}") int maxWidth,
+                               @Value("${image.variant.max-pixels:50000000}") long maxPixels) {
+        this.blobStore = blobStore;
+        this.derivativeCache = derivativeCache;
+        this.maxWidth = maxWidth;
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * The key identifying the variant, usable as entity tag without rendering it.
+     */
+    public String variantKey(Image image, int width) {
+        if (width < MIN_WIDTH || width > maxWidth) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Width must be between " + MIN_WIDTH + " and " + maxWidth);
+        }
+        var png = MediaType.IMAGE_PNG_VALUE.equals(image.getContentType());
+        return image.getContentKey() + "-w" + width + (png ? ".png" : ".jpg");
+    }
+
+    public ImageVariant findVariant(Image image, int width) {
+        var key = variantKey(image, width);
+        var cached = derivativeCache.get(key);
+        if (cached.isPresent()) {
+            return new ImageVariant(key, contentTypeOf(key), cached.get());
+        }
+
+        var rendering = new CompletableFuture<ImageVariant>();
+        var running = inProgress.putIfAbsent(key, rendering);
+        if (running != null) {
+            return join(running);
+        }
+        try {
+            // Another rendering may have finished between the cache lookup and claiming this one
+            var content = derivativeCache.get(key).orElse(null);
+            if (content == null) {
+                content = render(image, width, key);
+                derivativeCache.put(key, content);
+            }
+            var variant = new ImageVariant(key, contentTypeOf(key), content);
+            rendering.complete(variant);
+            return variant;
+        } catch (RuntimeException e) {
+            rendering.completeExceptionally(e);
+            throw e;
+        } finally {
+            inProgress.remove(key, rendering);
+        }
+    }
+
+    private byte[] render(Image image, int width, String key) {
+        var original = decode(image);
+
+        var png = key.endsWith(".png");
+        var targetWidth = Math.min(width, original.getWidth());
+        var targetHeight = Math.max(1, (int) Math.round((double) original.getHeight() * targetWidth / original.getWidth()));
+
+        var scaled = new BufferedImage(targetWidth, targetHeight, png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        var graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (!png) {
+                // JPEG has no alpha channel, flatten transparent images onto white
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, targetWidth, targetHeight);
+            }
+            graphics.drawImage(original, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        var output = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(scaled, png ? "png" : "jpg", output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Reads the dimensions from the header before decoding: a small upload can declare a huge image, which would
+     * need far more memory than the upload itself.
+     */
+    private BufferedImage decode(Image image) {
+        try (var content = ImageIO.createImageInputStream(blobStore.open(image.getContentKey()))) {
+            var readers = content == null ? null : ImageIO.getImageReaders(content);
+            if (readers == null || !readers.hasNext()) {
+                throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Can't create a variant of this image");
+            }
+            var reader = readers.next();
+            try {
+                reader.setInput(content, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > maxPixels) {
+                    throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Image is too large to create a variant of");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String contentTypeOf(String key) {
+        return key.endsWith(".png") ? MediaType.IMAGE_PNG_VALUE : MediaType.IMAGE_JPEG_VALUE;
+    }
+
+    private static ImageVariant join(CompletableFuture<ImageVariant> rendering) {
+        try {
+            return rendering.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package nl.quintor.declaration.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Content addressed storage for receipt binaries. Blobs are immutable and identified by the SHA-256 of their content.
+ */
+public interface BlobStore {
+
+    int TRANSFER_BUFFER_SIZE = 8192;
+
+    /**
+     * Stores the content of the stream, the stream is read to the end but not closed.
+     */
+    StoredBlob put(InputStream content) throws IOException;
+
+    InputStream open(String key) throws IOException;
+
+    boolean exists(String key);
+
+    /**
+     * Copies {@code count} bytes of the blob, starting at {@code position}, to the target. The default implementation
+     * streams through a fixed size buffer, stores backed by files should hand the copy to the operating system.
+     */
+    default void transferTo(String key, long position, long count, WritableByteChannel target) throws IOException {
+        try (var source = Channels.newChannel(open(key))) {
+            var buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+            var skipped = 0L;
+            var remaining = count;
+            while (remaining > 0) {
+                buffer.clear();
+                if (skipped < position) {
+                    buffer.limit((int) Math.min(buffer.capacity(), position - skipped));
+                } else {
+                    buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                }
+                var read = source.read(buffer);
+                if (read < 0) {
+                    throw new IOException("Blob " + key + " is shorter than expected");
+                }
+                if (skipped < position) {
+                    skipped += read;
+                    continue;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                remaining -= read;
+            }
+        }
+    }
+}
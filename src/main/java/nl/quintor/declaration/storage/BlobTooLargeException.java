@@ -0,0 +1,10 @@
+package nl.quintor.declaration.storage;
+
+import java.io.IOException;
+
+public class BlobTooLargeException extends IOException {
+
+    public BlobTooLargeException(long maxSize) {
+        super("Content exceeds the maximum size of " + maxSize + " bytes");
+    }
+}
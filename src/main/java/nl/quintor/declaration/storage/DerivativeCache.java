@@ -0,0 +1,159 @@
+package nl.quintor.declaration.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Two level, size bounded cache for derived files such as thumbnails. Both the in-memory and the on-disk level
+ * evict the least recently used entries once their byte budget is exceeded.
+ */
+@Slf4j
+public class DerivativeCache {
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-zA-Z_-][0-9a-zA-Z._-]*");
+
+    private Path directory;
+    private long maxMemoryBytes;
+    private long maxDiskBytes;
+
+    private LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    private AtomicLong diskBytes = new AtomicLong();
+
+    public DerivativeCache(Path directory, long maxMemoryBytes, long maxDiskBytes) {
+        this.directory = directory;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        try {
+            Files.createDirectories(directory);
+            try (var files = Files.list(directory)) {
+                diskBytes.set(files.mapToLong(DerivativeCache::sizeOf).sum());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't open derivative cache directory " + directory, e);
+        }
+    }
+
+    public Optional<byte[]> get(String key) {
+        checkKey(key);
+        synchronized (this) {
+            var cached = memory.get(key);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+        }
+
+        var file = directory.resolve(key);
+        try {
+            var content = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            putInMemory(key, content);
+            return Optional.of(content);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("Can't read derivative {}", key, e);
+            return Optional.empty();
+        }
+    }
+
+    public void put(String key, byte[] content) {
+        checkKey(key);
+        putInMemory(key, content);
+        try {
+            var temp = Files.createTempFile(directory, "derivative", ".tmp");
+            try {
+                Files.write(temp, content);
+                var target = directory.resolve(key);
+                // The move replaces a file that is cached already, only the difference is added
+                var replaced = Files.exists(target) ? sizeOf(target) : 0;
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                if (diskBytes.addAndGet(content.length - replaced) > maxDiskBytes) {
+                    evictFromDisk();
+                }
+            } catch (FileAlreadyExistsException ignored) {
+                // Already cached by someone else
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            log.warn("Can't write derivative {}", key, e);
+        }
+    }
+
+    private synchronized void putInMemory(String key, byte[] content) {
+        if (content.length > maxMemoryBytes) {
+            return;
+        }
+        var previous = memory.put(key, content);
+        memoryBytes += content.length - (previous == null ? 0 : previous.length);
+
+        var eldest = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            memoryBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the disk level is back at 90% of its budget, so eviction doesn't
+     * run on every put once the cache is full.
+     */
+    private synchronized void evictFromDisk() throws IOException {
+        var target = maxDiskBytes * 9 / 10;
+        if (diskBytes.get() <= target) {
+            return;
+        }
+        try (var files = Files.list(directory)) {
+            var oldestFirst = files
+                    .filter(file -> !file.getFileName().toString().endsWith(".tmp"))
+                    .sorted(Comparator.comparing(DerivativeCache::lastModified))
+                    .collect(Collectors.toList());
+            for (var file : oldestFirst) {
+                if (diskBytes.get() <= target) {
+                    break;
+                }
+                var size = sizeOf(file);
+                if (Files.deleteIfExists(file)) {
+                    diskBytes.addAndGet(-size);
+                }
+            }
+        }
+    }
+
+    private static void checkKey(String key) {
+        if (!KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid derivative key " + key);
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package nl.quintor.declaration.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+/**
+ * Stores blobs as files named after their SHA-256, fanned out over two directory levels
+ * ({@code ab/cd/abcd...}) to keep directories small.
+ */
+public class LocalFileSystemBlobStore implements BlobStore {
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Path root;
+    private Path incoming;
+
+    public LocalFileSystemBlobStore(Path root) {
+        this.root = root;
+        this.incoming = root.resolve("incoming");
+        try {
+            Files.createDirectories(incoming);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't create blob store directory " + root, e);
+        }
+    }
+
+    @Override
+    public StoredBlob put(InputStream content) throws IOException {
+        var temp = Files.createTempFile(incoming, "blob", ".tmp");
+        try {
+            var digestStream = new DigestInputStream(content, sha256());
+            var size = Files.copy(digestStream, temp, StandardCopyOption.REPLACE_EXISTING);
+            var key = toHex(digestStream.getMessageDigest().digest());
+
+            var target = resolve(key);
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException ignored) {
+                    // Someone else stored the same content in the meantime
+                }
+            }
+            return new StoredBlob(key, size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public void transferTo(String key, long position, long count, WritableByteChannel target) throws IOException {
+        try (var channel = FileChannel.open(resolve(key), StandardOpenOption.READ)) {
+            var transferred = 0L;
+            while (transferred < count) {
+                var written = channel.transferTo(position + transferred, count - transferred, target);
+                if (written <= 0 && position + transferred >= channel.size()) {
+                    throw new IOException("Blob " + key + " is shorter than expected");
+                }
+                transferred += written;
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(String key) {
+        try {
+            return Files.exists(resolve(key));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    Path resolve(String key) throws NoSuchFileException {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new NoSuchFileException(String.valueOf(key));
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        var hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,57 @@
+package nl.quintor.declaration.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails as soon as more than {@code maxSize} bytes are read, so an oversized upload is aborted mid-stream
+ * instead of after it has been stored.
+ */
+public class MaxSizeInputStream extends FilterInputStream {
+
+    private long maxSize;
+    private long count;
+
+    public MaxSizeInputStream(InputStream in, long maxSize) {
+        super(in);
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        var b = super.read();
+        if (b >= 0) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        var read = super.read(b, off, len);
+        if (read > 0) {
+            count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        var skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long read) throws BlobTooLargeException {
+        count += read;
+        if (count > maxSize) {
+            throw new BlobTooLargeException(maxSize);
+        }
+    }
+}
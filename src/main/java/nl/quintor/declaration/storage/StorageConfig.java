@@ -0,0 +1,26 @@
+package nl.quintor.declaration.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Paths;
+
+@Configuration
+public class StorageConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "storage.type", havingValue = "local", matchIfMissing = true)
+    public BlobStore localFileSystemBlobStore(@Value("${storage.local.root}") String root) {
+        return new LocalFileSystemBlobStore(Paths.get(root));
+    }
+
+    @Bean
+    public DerivativeCache derivativeCache(@Value("${image.variant.cache-dir}") String directory,
+                                           @Value("${image.variant.memory-cache-size:32MB}") DataSize memoryCacheSize,
+                                           @Value("${image.variant.disk-cache-size:1GB}") DataSize diskCacheSize) {
+        return new DerivativeCache(Paths.get(directory), memoryCacheSize.toBytes(), diskCacheSize.toBytes());
+    }
+}
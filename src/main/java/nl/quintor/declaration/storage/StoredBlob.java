@@ -0,0 +1,11 @@
+package nl.quintor.declaration.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class StoredBlob {
+    private String key;
+    private long size;
+}
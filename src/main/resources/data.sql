@@ -1,10 +1,13 @@
-INSERT INTO image (id, name, file_name, employee) VALUES
-(1, 'photo1', null, 'employee'),
-(2, 'photo2', null, 'manager'),
-(3, 'photo3', null, 'assistantManager');
+INSERT INTO image (id, name, file_name, employee, content_key, size, content_type) VALUES
+(1, 'photo1', null, 'employee', null, 0, null),
+(2, 'photo2', null, 'manager', null, 0, null),
+(3, 'photo3', null, 'assistantManager', null, 0, null);
 
-INSERT INTO declaration (id, costs, approved_local, approved_global, employee, instance_id, image_id) VALUES
-(1, 12.0, FALSE, FALSE, 'employee', 'instanceid', 1),
-(2, 12.0, FALSE, FALSE, 'employee', 'instanceid', 1),
-(3, 12.0, FALSE, FALSE, 'manager', 'instanceid', 2),
-(4, 12.0, FALSE, FALSE, 'manager', 'instanceid', 2);
\ No newline at end of file
+INSERT INTO declaration (id, costs, approved_local, approved_global, employee, instance_id, image_id, version, changed_at) VALUES
+(1, 12.0, FALSE, FALSE, 'employee', 'instanceid', 1, 0, 0),
+(2, 12.0, FALSE, FALSE, 'employee', 'instanceid', 1, 0, 0),
+(3, 12.0, FALSE, FALSE, 'manager', 'instanceid', 2, 0, 0),
+(4, 12.0, FALSE, FALSE, 'manager', 'instanceid', 2, 0, 0);
+
+-- Ids above are inserted explicitly, let the pooled generator continue after them
+ALTER SEQUENCE declaration_seq RESTART WITH 101;
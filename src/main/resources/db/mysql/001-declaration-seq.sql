@@ -0,0 +1,9 @@
+-- Declaration ids come from a pooled sequence (allocationSize 50), MySQL has no sequences so Hibernate emulates it
+-- with this table. Run once per shard before deploying, with @shard_start = n * 10^12 on shard n (0 on the first).
+SET @shard_start = 0;
+
+CREATE TABLE declaration_seq (next_val BIGINT) ENGINE=InnoDB;
+
+-- The pooled optimizer hands out next_val - 49 up to next_val, so start above the ids that exist already
+INSERT INTO declaration_seq (next_val)
+SELECT GREATEST(COALESCE(MAX(id), 0), @shard_start) + 51 FROM declaration;
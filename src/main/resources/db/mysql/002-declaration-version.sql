@@ -0,0 +1,2 @@
+-- Optimistic version of a declaration, a patch only applies to the version it was based on
+ALTER TABLE declaration ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,16 @@
+-- Images are stored on the shard of their instance. Run on every shard before deploying, with
+-- @shard_start = n * 10^12 on shard n (0 on the first).
+SET @shard_start = 0;
+
+ALTER TABLE image ADD COLUMN instance_id VARCHAR(255);
+
+-- Existing images take the instance of a declaration they belong to, the others stay on the first shard
+UPDATE image i JOIN declaration d ON d.image_id = i.id
+SET i.instance_id = d.instance_id
+WHERE i.instance_id IS NULL;
+
+-- Image ids are unique over all shards like declaration ids, MySQL keeps the current value when it is higher
+SET @image_start = CONCAT('ALTER TABLE image AUTO_INCREMENT = ', @shard_start + 1);
+PREPARE image_start FROM @image_start;
+EXECUTE image_start;
+DEALLOCATE PREPARE image_start;
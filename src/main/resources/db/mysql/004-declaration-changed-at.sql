@@ -0,0 +1,21 @@
+-- Delta sync: when a declaration last changed and which ones left the list of an employee. Run on every shard
+-- before deploying.
+ALTER TABLE declaration ADD COLUMN changed_at BIGINT NOT NULL DEFAULT 0;
+
+-- Existing rows count as changed now, so clients that sync from before the deployment still get them
+UPDATE declaration SET changed_at = ROUND(UNIX_TIMESTAMP(CURRENT_TIMESTAMP(3)) * 1000) WHERE changed_at = 0;
+
+CREATE INDEX idx_declaration_employee_changed_at ON declaration (employee, changed_at);
+CREATE INDEX idx_declaration_changed_at ON declaration (changed_at);
+
+CREATE TABLE declaration_tombstone (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    declaration_id BIGINT NOT NULL,
+    employee VARCHAR(255),
+    deleted BIT NOT NULL,
+    removed_at BIGINT NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+CREATE INDEX idx_declaration_tombstone_employee_removed_at ON declaration_tombstone (employee, removed_at);
+CREATE INDEX idx_declaration_tombstone_removed_at ON declaration_tombstone (removed_at);
@@ -0,0 +1,28 @@
+-- Running totals per employee and per instance, kept up to date in the transaction of every declaration write: the
+-- table has to exist before deploying or every write fails. Run on every shard, each summarizes its own declarations.
+CREATE TABLE declaration_summary (
+    dimension VARCHAR(16) NOT NULL,
+    group_key VARCHAR(255) NOT NULL,
+    declaration_count BIGINT NOT NULL,
+    total_costs DOUBLE PRECISION NOT NULL,
+    approved_local_count BIGINT NOT NULL,
+    approved_global_count BIGINT NOT NULL,
+    PRIMARY KEY (dimension, group_key)
+) ENGINE=InnoDB;
+
+-- Declarations written by the old version after this ran are repaired by the nightly reconcile
+INSERT INTO declaration_summary
+    (dimension, group_key, declaration_count, total_costs, approved_local_count, approved_global_count)
+SELECT 'EMPLOYEE', employee, COUNT(*), SUM(costs),
+       SUM(CASE WHEN approved_local THEN 1 ELSE 0 END), SUM(CASE WHEN approved_global THEN 1 ELSE 0 END)
+FROM declaration
+WHERE employee IS NOT NULL
+GROUP BY employee;
+
+INSERT INTO declaration_summary
+    (dimension, group_key, declaration_count, total_costs, approved_local_count, approved_global_count)
+SELECT 'INSTANCE', instance_id, COUNT(*), SUM(costs),
+       SUM(CASE WHEN approved_local THEN 1 ELSE 0 END), SUM(CASE WHEN approved_global THEN 1 ELSE 0 END)
+FROM declaration
+WHERE instance_id IS NOT NULL
+GROUP BY instance_id;
@@ -0,0 +1,5 @@
+-- Keyset pages seek on (filter, id) and approvals look up unapproved declarations, without these they scan the
+-- table. Run on every shard.
+CREATE INDEX idx_declaration_employee_id ON declaration (employee, id);
+CREATE INDEX idx_declaration_instance_id_id ON declaration (instance_id, id);
+CREATE INDEX idx_declaration_approval_id ON declaration (approved_local, approved_global, id);
@@ -0,0 +1,7 @@
+-- Image content moves from the file column into the blob store (storage.type), the rows keep its key, size and type.
+-- Run on every shard before deploying, then move the existing files by starting one instance with
+-- image.migrate-blobs=true and drop the file column with 008-image-drop-file.sql.
+ALTER TABLE image
+    ADD COLUMN content_key VARCHAR(64),
+    ADD COLUMN size BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN content_type VARCHAR(255);
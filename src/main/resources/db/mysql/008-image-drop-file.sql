@@ -0,0 +1,4 @@
+-- Run on every shard once the instance started with image.migrate-blobs=true logged that the files are moved.
+-- This has to return 0 first, otherwise content is lost:
+-- SELECT COUNT(*) FROM image WHERE file IS NOT NULL AND content_key IS NULL;
+ALTER TABLE image DROP COLUMN file;
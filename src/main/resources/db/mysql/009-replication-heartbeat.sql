@@ -0,0 +1,9 @@
+-- The primary stamps row 1 with the current time, replicas whose copy lags more than datasource.max-replica-lag are
+-- taken out of the rotation. Run on the primary before configuring replicas, the row replicates to them.
+CREATE TABLE replication_heartbeat (
+    id INT NOT NULL,
+    beat_at BIGINT NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, 0);
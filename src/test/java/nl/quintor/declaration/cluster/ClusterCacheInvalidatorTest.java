@@ -0,0 +1,94 @@
+package nl.quintor.declaration.cluster;
+
+import nl.quintor.declaration.config.CacheConfig;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.service.DeclarationChange;
+import nl.quintor.declaration.service.DeclarationChangedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ClusterCacheInvalidatorTest {
+
+    private LoopbackInvalidationTransport transport = new LoopbackInvalidationTransport();
+    private ConcurrentMapCacheManager firstNodeCaches = new ConcurrentMapCacheManager();
+    private ConcurrentMapCacheManager secondNodeCaches = new ConcurrentMapCacheManager();
+    private ClusterCacheInvalidator firstNode;
+
+    @Before
+    public void init() {
+        firstNode = new ClusterCacheInvalidator(firstNodeCaches, transport, event -> { });
+        new ClusterCacheInvalidator(secondNodeCaches, transport, event -> { });
+
+        for (var caches : List.of(firstNodeCaches, secondNodeCaches)) {
+            caches.getCache(CacheConfig.DECLARATIONS).put(1L, Declaration.builder().id(1).employee("employee").build());
+            caches.getCache(CacheConfig.DECLARATIONS).put(2L, Declaration.builder().id(2).employee("manager").build());
+            caches.getCache(CacheConfig.DECLARATIONS_BY_EMPLOYEE).put("employee", List.of());
+            caches.getCache(CacheConfig.DECLARATIONS_BY_EMPLOYEE).put("manager", List.of());
+            caches.getCache(CacheConfig.OWN_DECLARATIONS).put("1:employee", Declaration.builder().id(1).employee("employee").build());
+            caches.getCache(CacheConfig.OWN_DECLARATIONS).put("1:manager", Declaration.builder().id(1).employee("employee").build());
+        }
+    }
+
+    @Test
+    public void onDeclarationChanged_withChangedDeclaration_shouldEvictItOnAllNodes() {
+        var before = Declaration.builder().id(1).employee("employee").build();
+        var after = before.toBuilder().costs(10).build();
+
+        firstNode.onDeclarationChanged(new DeclarationChangedEvent(List.of(new DeclarationChange(before, after))));
+
+        for (var caches : List.of(firstNodeCaches, secondNodeCaches)) {
+            assertThat(caches.getCache(CacheConfig.DECLARATIONS).get(1L)).isNull();
+            assertThat(caches.getCache(CacheConfig.DECLARATIONS).get(2L)).isNotNull();
+            assertThat(caches.getCache(CacheConfig.DECLARATIONS_BY_EMPLOYEE).get("employee")).isNull();
+            assertThat(caches.getCache(CacheConfig.DECLARATIONS_BY_EMPLOYEE).get("manager")).isNotNull();
+        }
+    }
+
+    @Test
+    public void onDeclarationChanged_withDeclarationMovedToOtherEmployee_shouldEvictLookupsOfBothOnAllNodes() {
+        var before = Declaration.builder().id(1).employee("employee").build();
+        var after = before.toBuilder().employee("manager").build();
+
+        firstNode.onDeclarationChanged(new DeclarationChangedEvent(List.of(new DeclarationChange(before, after))));
+
+        for (var caches : List.of(firstNodeCaches, secondNodeCaches)) {
+            assertThat(caches.getCache(CacheConfig.OWN_DECLARATIONS).get("1:employee")).isNull();
+            assertThat(caches.getCache(CacheConfig.OWN_DECLARATIONS).get("1:manager")).isNull();
+        }
+    }
+
+    @Test
+    public void invalidate_withImageOwner_shouldConvertKeysBackToIds() {
+        for (var caches : List.of(firstNodeCaches, secondNodeCaches)) {
+            caches.getCache(CacheConfig.IMAGE_OWNERS).put(7L, "employee");
+        }
+
+        firstNode.invalidate(CacheConfig.IMAGE_OWNERS, List.of(7L));
+
+        assertThat(secondNodeCaches.getCache(CacheConfig.IMAGE_OWNERS).get(7L)).isNull();
+    }
+
+    @Test
+    public void receive_withWrongSecret_shouldIgnoreInvalidation() {
+        var httpTransport = new HttpInvalidationTransport(null, "declaration-service", "secret", null);
+        var cacheManager = mock(CacheManager.class);
+        new ClusterCacheInvalidator(cacheManager, httpTransport, event -> { });
+        var invalidation = CacheInvalidation.builder()
+                .origin("other").cacheName(CacheConfig.DECLARATIONS).keys(List.of("1")).build();
+
+        assertThat(httpTransport.receive(invalidation, "guess")).isFalse();
+        assertThat(httpTransport.receive(invalidation, null)).isFalse();
+        verify(cacheManager, never()).getCache(any());
+        httpTransport.shutdown();
+    }
+}
@@ -0,0 +1,23 @@
+package nl.quintor.declaration.cluster;
+
+import org.junit.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+public class ClusterConfigTest {
+
+    @Test
+    public void httpInvalidationTransport_withoutSecret_shouldFailWithClearMessage() {
+        var discoveryClient = mock(DiscoveryClient.class);
+
+        assertThatThrownBy(() -> new ClusterConfig().httpInvalidationTransport(discoveryClient,
+                new RestTemplateBuilder(), "declaration-service", "", Duration.ofSeconds(2)))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("CLUSTER_SECRET");
+    }
+}
@@ -1,7 +1,12 @@
 package nl.quintor.declaration.controller;
 
 import nl.quintor.declaration.config.WithMockUserCustomPrincipal;
+import nl.quintor.declaration.model.ApprovalLevel;
+import nl.quintor.declaration.model.ApprovalRequest;
+import nl.quintor.declaration.model.ApprovalResult;
 import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.model.DeclarationFilter;
+import nl.quintor.declaration.model.DeclarationPage;
 import nl.quintor.declaration.service.DeclarationService;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,18 +14,28 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.persistence.EntityNotFoundException;
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -57,7 +72,7 @@ public class DeclarationControllerSecurityTest {
 
         when(declarationService.findAll()).thenReturn(dummyData);
 
-        var declarations = declarationController.getAll(noQueryParam);
+        var declarations = declarationController.getAll(noQueryParam, request());
 
         verify(declarationService).findAll();
         assertThat(declarations).size().isEqualTo(5);
@@ -70,7 +85,7 @@ public class DeclarationControllerSecurityTest {
 
         when(declarationService.findAll()).thenReturn(dummyData);
 
-        var declarations = declarationController.getAll(noQueryParam);
+        var declarations = declarationController.getAll(noQueryParam, request());
 
         verify(declarationService).findAll();
         assertThat(declarations).size().isEqualTo(5);
@@ -81,7 +96,7 @@ public class DeclarationControllerSecurityTest {
     public void getAll_withEmployeeRoleAndNoQueryParam_shouldThrowException() {
         String noQueryParam = null;
 
-        assertThatThrownBy(() -> declarationController.getAll(noQueryParam))
+        assertThatThrownBy(() -> declarationController.getAll(noQueryParam, request()))
                 .isExactlyInstanceOf(AccessDeniedException.class)
                 .hasMessage("Access is denied");
     }
@@ -95,7 +110,7 @@ public class DeclarationControllerSecurityTest {
         when(declarationService.findAllByEmployee(inputEmployee))
                 .thenReturn(expectedOutput);
 
-        var declarations = declarationController.getAll(inputEmployee);
+        var declarations = declarationController.getAll(inputEmployee, request());
 
         verify(declarationService).findAllByEmployee(inputEmployee);
         assertThat(declarations).size().isEqualTo(2);
@@ -111,7 +126,7 @@ public class DeclarationControllerSecurityTest {
         when(declarationService.findAllByEmployee(inputEmployee))
                 .thenReturn(expectedOutput);
 
-        var declarations = declarationController.getAll(inputEmployee);
+        var declarations = declarationController.getAll(inputEmployee, request());
 
         verify(declarationService).findAllByEmployee(inputEmployee);
         assertThat(declarations).size().isEqualTo(1);
@@ -127,7 +142,7 @@ public class DeclarationControllerSecurityTest {
         when(declarationService.findAllByEmployee(inputEmployee))
                 .thenReturn(expectedOutput);
 
-        var declarations = declarationController.getAll(inputEmployee);
+        var declarations = declarationController.getAll(inputEmployee, request());
 
         verify(declarationService).findAllByEmployee(inputEmployee);
         assertThat(declarations).size().isEqualTo(2);
@@ -143,7 +158,7 @@ public class DeclarationControllerSecurityTest {
         when(declarationService.findAllByEmployee(inputEmployee))
                 .thenReturn(expectedOutput);
 
-        var declarations = declarationController.getAll(inputEmployee);
+        var declarations = declarationController.getAll(inputEmployee, request());
 
         verify(declarationService).findAllByEmployee(inputEmployee);
         assertThat(declarations).size().isEqualTo(2);
@@ -155,22 +170,107 @@ public class DeclarationControllerSecurityTest {
     public void getAll_withEmployeeRoleAndQueryParamForSomeoneElse_shouldThrowException() {
         var inputEmployee = "anotherEmployee";
 
-        assertThatThrownBy(() -> declarationController.getAll(inputEmployee))
+        assertThatThrownBy(() -> declarationController.getAll(inputEmployee, request()))
+                .isExactlyInstanceOf(AccessDeniedException.class)
+                .hasMessage("Access is denied");
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
+    public void getAllExpanded_withEmployeeRoleAndQueryParamForSomeoneElse_shouldThrowException() {
+        assertThatThrownBy(() -> declarationController.getAllExpanded("anotherEmployee"))
+                .isExactlyInstanceOf(AccessDeniedException.class)
+                .hasMessage("Access is denied");
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
+    public void feed_withEmployeeRoleAndQueryParamForHimself_shouldSubscribe() {
+        assertThat(declarationController.feed("employee", null)).isNotNull();
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
+    public void feed_withEmployeeRoleAndNoQueryParam_shouldThrowException() {
+        assertThatThrownBy(() -> declarationController.feed(null, "instanceid"))
                 .isExactlyInstanceOf(AccessDeniedException.class)
                 .hasMessage("Access is denied");
     }
 
 
 
+    @Test
+    @WithMockUserCustomPrincipal(username = "manager", roles = {"MANAGER"})
+    public void getPage_withManagerRoleAndNoEmployeeFilter_shouldReturnPage() {
+        var expectedFilter = DeclarationFilter.builder().instanceId("instanceid").build();
+        var expectedOutput = DeclarationPage.builder().items(dummyData.subList(0, 2)).nextCursor("Mg").build();
+
+        when(declarationService.findPage(expectedFilter, null, 2)).thenReturn(expectedOutput);
+
+        var page = declarationController.getPage(null, "instanceid", null, null, null, 2);
+
+        verify(declarationService).findPage(expectedFilter, null, 2);
+        assertThat(page.getItems()).size().isEqualTo(2);
+        assertThat(page.getNextCursor()).isEqualTo("Mg");
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
+    public void getPage_withEmployeeRoleAndEmployeeFilterForHimself_shouldReturnPage() {
+        var expectedFilter = DeclarationFilter.builder().employee("employee").build();
+        var expectedOutput = DeclarationPage.builder().items(dummyData.subList(0, 2)).build();
+
+        when(declarationService.findPage(expectedFilter, null, null)).thenReturn(expectedOutput);
+
+        var page = declarationController.getPage("employee", null, null, null, null, null);
+
+        assertThat(page.getItems()).size().isEqualTo(2);
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
+    public void getPage_withEmployeeRoleAndNoEmployeeFilter_shouldThrowException() {
+        assertThatThrownBy(() -> declarationController.getPage(null, null, null, null, null, null))
+                .isExactlyInstanceOf(AccessDeniedException.class)
+                .hasMessage("Access is denied");
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "manager", roles = {"MANAGER"})
+    @SuppressWarnings("unchecked")
+    public void export_withManagerRoleAndCsvFormat_shouldStreamAllData() throws Exception {
+        doAnswer(invocation -> {
+            dummyData.forEach(invocation.getArgument(1, Consumer.class));
+            return null;
+        }).when(declarationService).forEach(eq(null), any());
+
+        var response = declarationController.export(null, "csv");
+        var output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+
+        var lines = output.toString("UTF-8").split("\r\n");
+        assertThat(lines).hasSize(6);
+        assertThat(lines[1]).isEqualTo("1,12.0,false,false,employee,,0");
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
+    public void export_withEmployeeRoleAndNoEmployeeFilter_shouldThrowException() {
+        assertThatThrownBy(() -> declarationController.export(null, "ndjson"))
+                .isExactlyInstanceOf(AccessDeniedException.class)
+                .hasMessage("Access is denied");
+    }
+
     @Test
     @WithMockUserCustomPrincipal(username = "manager", roles = {"MANAGER"})
     public void findById_withManagerRoleAndValidId_shouldReturnDeclaration() throws Exception {
         var inputId = 1;
         var expectedOutput = dummyData.get(inputId - 1);
 
-        when(declarationService.findById(inputId)).thenReturn(Optional.of(expectedOutput));
+        when(declarationService.findVisibleById(eq((long) inputId), any())).thenReturn(Optional.of(expectedOutput));
 
-        var declaraton = declarationController.findById(inputId);
+        var declaraton = declarationController.findById(inputId, currentAuthentication());
 
         assertThat(declaraton).isNotNull();
         assertThat(declaraton.getId()).isEqualTo(inputId);
@@ -184,9 +284,9 @@ public class DeclarationControllerSecurityTest {
         var inputId = 2;
         var expectedOutput = dummyData.get(inputId - 1);
 
-        when(declarationService.findById(inputId)).thenReturn(Optional.of(expectedOutput));
+        when(declarationService.findVisibleById(eq((long) inputId), any())).thenReturn(Optional.of(expectedOutput));
 
-        var declaraton = declarationController.findById(inputId);
+        var declaraton = declarationController.findById(inputId, currentAuthentication());
 
         assertThat(declaraton).isNotNull();
         assertThat(declaraton.getId()).isEqualTo(inputId);
@@ -200,9 +300,9 @@ public class DeclarationControllerSecurityTest {
         var inputId = 1;
         var expectedOutput = dummyData.get(inputId - 1);
 
-        when(declarationService.findById(inputId)).thenReturn(Optional.of(expectedOutput));
+        when(declarationService.findVisibleById(eq((long) inputId), any())).thenReturn(Optional.of(expectedOutput));
 
-        var declaration = declarationController.findById(inputId);
+        var declaration = declarationController.findById(inputId, currentAuthentication());
 
         assertThat(declaration).isNotNull();
         assertThat(declaration.getId()).isEqualTo(inputId);
@@ -210,27 +310,14 @@ public class DeclarationControllerSecurityTest {
         assertThat(declaration.getCosts()).isEqualTo(expectedOutput.getCosts());
     }
 
-    @Test
-    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
-    public void findById_withEmployeeRoleAndValidId_shouldThrowExceptionIfHeIsNotTheEmployee() throws Exception {
-        var inputId = 3;
-        var expectedOutput = dummyData.get(inputId - 1);
-
-        when(declarationService.findById(3)).thenReturn(Optional.of(expectedOutput));
-
-        assertThatThrownBy(() -> declarationController.findById(inputId))
-                .isExactlyInstanceOf(AccessDeniedException.class)
-                .hasMessage("Access is denied");
-    }
-
     @Test
     @WithMockUserCustomPrincipal(username = "manager", roles = {"MANAGER"})
     public void findById_withManagerRoleAndInvalidId_shouldReturnException()  {
         var invalidInputId = 1000;
 
-        when(declarationService.findById(invalidInputId)).thenReturn(Optional.empty());
+        when(declarationService.findVisibleById(eq((long) invalidInputId), any())).thenReturn(Optional.empty());
 
-        assertThatThrownBy(() -> declarationController.findById(invalidInputId))
+        assertThatThrownBy(() -> declarationController.findById(invalidInputId, currentAuthentication()))
                 .isExactlyInstanceOf(EntityNotFoundException.class)
                 .hasMessage("Can't find declaration for given Id");
     }
@@ -240,9 +327,9 @@ public class DeclarationControllerSecurityTest {
     public void findById_withAssistantManagerRoleAndInvalidId_shouldReturnException()  {
         var invalidInputId = 1000;
 
-        when(declarationService.findById(invalidInputId)).thenReturn(Optional.empty());
+        when(declarationService.findVisibleById(eq((long) invalidInputId), any())).thenReturn(Optional.empty());
 
-        assertThatThrownBy(() -> declarationController.findById(invalidInputId))
+        assertThatThrownBy(() -> declarationController.findById(invalidInputId, currentAuthentication()))
                 .isExactlyInstanceOf(EntityNotFoundException.class)
                 .hasMessage("Can't find declaration for given Id");
     }
@@ -252,9 +339,9 @@ public class DeclarationControllerSecurityTest {
     public void findById_withEmployeeRoleAndInvalidId_shouldReturnException()  {
         var invalidInputId = 1000;
 
-        when(declarationService.findById(invalidInputId)).thenReturn(Optional.empty());
+        when(declarationService.findVisibleById(eq((long) invalidInputId), any())).thenReturn(Optional.empty());
 
-        assertThatThrownBy(() -> declarationController.findById(invalidInputId))
+        assertThatThrownBy(() -> declarationController.findById(invalidInputId, currentAuthentication()))
                 .isExactlyInstanceOf(EntityNotFoundException.class)
                 .hasMessage("Can't find declaration for given Id");
     }
@@ -348,7 +435,7 @@ public class DeclarationControllerSecurityTest {
 
         when(declarationService.save(inputDeclaration)).thenReturn(expectedOutput);
 
-        var declaration = declarationController.create(inputDeclaration);
+        var declaration = declarationController.create(inputDeclaration).join();
 
         assertThat(declaration).isNotNull();
         assertThat(declaration.getId()).isEqualTo(expectedOutput.getId());
@@ -373,7 +460,7 @@ public class DeclarationControllerSecurityTest {
 
         when(declarationService.save(inputDeclaration)).thenReturn(expectedOutput);
 
-        var declaration = declarationController.create(inputDeclaration);
+        var declaration = declarationController.create(inputDeclaration).join();
 
         assertThat(declaration).isNotNull();
         assertThat(declaration.getId()).isEqualTo(expectedOutput.getId());
@@ -398,7 +485,7 @@ public class DeclarationControllerSecurityTest {
 
         when(declarationService.save(inputDeclaration)).thenReturn(expectedOutput);
 
-        var declaration = declarationController.create(inputDeclaration);
+        var declaration = declarationController.create(inputDeclaration).join();
 
         assertThat(declaration).isNotNull();
         assertThat(declaration.getId()).isEqualTo(expectedOutput.getId());
@@ -420,4 +507,39 @@ public class DeclarationControllerSecurityTest {
                 .hasMessage("Access is denied");
     }
 
+    @Test
+    @WithMockUserCustomPrincipal(username = "manager", roles = {"MANAGER"})
+    public void approve_withManagerRole_shouldReturnApprovedIds() {
+        var request = ApprovalRequest.builder().level(ApprovalLevel.LOCAL).ids(List.of(1L, 2L)).build();
+
+        when(declarationService.approve(request)).thenReturn(new ApprovalResult(List.of(1L, 2L), false, List.of()));
+
+        assertThat(declarationController.approve(request).getIds()).containsExactly(1L, 2L);
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
+    public void approve_withEmployeeRole_shouldThrowException() {
+        var request = ApprovalRequest.builder().level(ApprovalLevel.LOCAL).employee("employee").build();
+
+        assertThatThrownBy(() -> declarationController.approve(request))
+                .isExactlyInstanceOf(AccessDeniedException.class)
+                .hasMessage("Access is denied");
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
+    public void getSummary_withEmployeeRole_shouldThrowException() {
+        assertThatThrownBy(() -> declarationController.getSummary("employee"))
+                .isExactlyInstanceOf(AccessDeniedException.class)
+                .hasMessage("Access is denied");
+    }
+
+    private static Authentication currentAuthentication() {
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    private static WebRequest request() {
+        return new ServletWebRequest(new MockHttpServletRequest());
+    }
 }
@@ -8,15 +8,32 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -56,17 +73,66 @@ public class ImageControllerSecurityTest {
 
     @Test
     @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
-    public void findImage_withEmployeeRoleAndUserIsOwner_shouldReturnImage() {
+    public void upload_withEmployeeRoleAndMultipartFile_shouldCreateImageOwnedByUser() throws Exception {
+        var file = new MockMultipartFile("file", "receipt.png", "image/png", "hello".getBytes());
+        var expectedImage = Image.builder().employee("employee").name("receipt.png").fileName("receipt.png").build();
+
+        when(imageService.save(eq(expectedImage), any())).thenReturn(Image.builder().id(7).build());
+
+        var imageId = imageController.upload(file, null, null, SecurityContextHolder.getContext().getAuthentication());
+
+        assertThat(imageId).isEqualTo(7);
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"SOME_ROLE"})
+    public void upload_withNoEmployeeRole_shouldThrowException() {
+        var file = new MockMultipartFile("file", "receipt.png", "image/png", "hello".getBytes());
+
+        assertThatThrownBy(() -> imageController.upload(file, null, null, SecurityContextHolder.getContext().getAuthentication()))
+                .isExactlyInstanceOf(AccessDeniedException.class)
+                .hasMessage("Access is denied");
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
+    public void findImage_withEmployeeRoleAndUserIsOwner_shouldReturnImage() throws Exception {
         var inputId = 1;
         var imageOwner = "employee";
 
-        when(imageService.findById(inputId)).thenReturn(Optional.of(Image.builder().id(1).employee(imageOwner).file("hello".getBytes()).build()));
+        var image = Image.builder().id(1).employee(imageOwner).contentKey("key").contentType("image/png").size(5).build();
+        when(imageService.findById(inputId)).thenReturn(Optional.of(image));
+        when(imageService.findOwnerById(inputId)).thenReturn(Optional.of(imageOwner));
+        stubContent(image, "hello");
+
+        var img = imageController.findImage(inputId, null, new HttpHeaders());
+
+        assertThat(img.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_PNG);
+        assertThat(img.getHeaders().getContentLength()).isEqualTo(5);
+        assertThat(img.getHeaders().getETag()).isEqualTo("\"key\"");
+        assertThat(img.getHeaders().getCacheControl()).contains("immutable");
+        assertThat(bodyOf(img)).isEqualTo("hello");
+        verify(imageService, times(1)).findById(inputId);
+
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
+    public void findImage_withEmployeeRoleAndMatchingIfNoneMatch_shouldReturnNotModifiedWithoutContent() throws Exception {
+        var inputId = 1;
+        var image = Image.builder().id(1).employee("employee").contentKey("key").size(5).build();
+        var headers = new HttpHeaders();
+        headers.setIfNoneMatch("\"key\"");
 
-        var img = imageController.findImage(inputId);
+        when(imageService.findById(inputId)).thenReturn(Optional.of(image));
+        when(imageService.findOwnerById(inputId)).thenReturn(Optional.of("employee"));
 
-        assertThat(img).isNotNull();
-        assertThat(new String(img)).isEqualTo("hello");
+        var img = imageController.findImage(inputId, null, headers);
 
+        assertThat(img.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(img.getHeaders().getETag()).isEqualTo("\"key\"");
+        assertThat(img.getBody()).isNull();
+        verify(imageService, never()).transferContent(any(), anyLong(), anyLong(), any());
     }
 
     @Test
@@ -75,40 +141,80 @@ public class ImageControllerSecurityTest {
         var inputId = 1;
         var imageOwner = "otherEmployee";
 
-        when(imageService.findById(inputId)).thenReturn(Optional.of(Image.builder().id(1).employee(imageOwner).file("hello".getBytes()).build()));
+        when(imageService.findById(inputId)).thenReturn(Optional.of(Image.builder().id(1).employee(imageOwner).contentKey("key").build()));
+        when(imageService.findOwnerById(inputId)).thenReturn(Optional.of(imageOwner));
 
-        assertThatThrownBy(() -> imageController.findImage(inputId))
+        assertThatThrownBy(() -> imageController.findImage(inputId, null, new HttpHeaders()))
         .isExactlyInstanceOf(AccessDeniedException.class)
         .hasMessage("Access is denied");
     }
 
     @Test
     @WithMockUserCustomPrincipal(username = "manager", roles = {"MANAGER"})
-    public void findImage_withManagerRoleAndUserIsNotOwner_shouldReturnImage() {
+    public void findImage_withManagerRoleAndUserIsNotOwner_shouldReturnImage() throws Exception {
         var inputId = 1;
         var imageOwner = "employee";
 
-        when(imageService.findById(inputId)).thenReturn(Optional.of(Image.builder().id(1).employee(imageOwner).file("hello".getBytes()).build()));
+        var image = Image.builder().id(1).employee(imageOwner).contentKey("key").contentType("image/png").size(5).build();
+        when(imageService.findById(inputId)).thenReturn(Optional.of(image));
+        when(imageService.findOwnerById(inputId)).thenReturn(Optional.of(imageOwner));
+        stubContent(image, "hello");
 
-        var img = imageController.findImage(inputId);
+        var img = imageController.findImage(inputId, null, new HttpHeaders());
 
-        assertThat(img).isNotNull();
-        assertThat(new String(img)).isEqualTo("hello");
+        assertThat(img.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_PNG);
+        assertThat(img.getHeaders().getContentLength()).isEqualTo(5);
+        assertThat(bodyOf(img)).isEqualTo("hello");
 
     }
 
     @Test
     @WithMockUserCustomPrincipal(username = "assistantManager", roles = {"ASSISTANT_MANAGER"})
-    public void findImage_withAssistantManagerRoleAndUserIsNotOwner_shouldReturnImage() {
+    public void findImage_withAssistantManagerRoleAndUserIsNotOwner_shouldReturnImage() throws Exception {
         var inputId = 1;
         var imageOwner = "employee";
 
-        when(imageService.findById(inputId)).thenReturn(Optional.of(Image.builder().id(1).employee(imageOwner).file("hello".getBytes()).build()));
+        var image = Image.builder().id(1).employee(imageOwner).contentKey("key").contentType("image/png").size(5).build();
+        when(imageService.findById(inputId)).thenReturn(Optional.of(image));
+        when(imageService.findOwnerById(inputId)).thenReturn(Optional.of(imageOwner));
+        stubContent(image, "hello");
+
+        var img = imageController.findImage(inputId, null, new HttpHeaders());
+
+        assertThat(img.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_PNG);
+        assertThat(img.getHeaders().getContentLength()).isEqualTo(5);
+        assertThat(bodyOf(img)).isEqualTo("hello");
+
+    }
+
+    @Test
+    @WithMockUserCustomPrincipal(username = "employee", roles = {"EMPLOYEE"})
+    public void findImage_withContentMissingFromStore_shouldThrowNotFound() {
+        var inputId = 1;
+        var image = Image.builder().id(1).employee("employee").contentKey("key").size(5).build();
+
+        when(imageService.findById(inputId)).thenReturn(Optional.of(image));
+        when(imageService.findOwnerById(inputId)).thenReturn(Optional.of("employee"));
+        when(imageService.hasContent(image)).thenReturn(false);
 
-        var img = imageController.findImage(inputId);
+        assertThatThrownBy(() -> imageController.findImage(inputId, null, new HttpHeaders()))
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.NOT_FOUND));
+    }
 
-        assertThat(img).isNotNull();
-        assertThat(new String(img)).isEqualTo("hello");
+    private void stubContent(Image image, String content) throws IOException {
+        when(imageService.hasContent(image)).thenReturn(true);
+        doAnswer(invocation -> {
+            long position = invocation.getArgument(1);
+            long count = invocation.getArgument(2);
+            invocation.getArgument(3, OutputStream.class)
+                    .write(content.getBytes(), (int) position, (int) count);
+            return null;
+        }).when(imageService).transferContent(eq(image), anyLong(), anyLong(), any());
+    }
 
+    private static String bodyOf(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        var output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+        return output.toString();
     }
 }
@@ -0,0 +1,103 @@
+package nl.quintor.declaration.controller;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RangeRequestsTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final String ETAG = "\"key\"";
+
+    @Test
+    public void respond_withoutRange_shouldReturnFullContent() throws Exception {
+        var response = respond(new HttpHeaders());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(bodyOf(response)).isEqualTo("0123456789");
+    }
+
+    @Test
+    public void respond_withSingleRange_shouldReturnPartialContent() throws Exception {
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=2-4");
+
+        var response = respond(headers);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-4/10");
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(3);
+        assertThat(bodyOf(response)).isEqualTo("234");
+    }
+
+    @Test
+    public void respond_withSuffixRange_shouldReturnLastBytes() throws Exception {
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=-3");
+
+        var response = respond(headers);
+
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 7-9/10");
+        assertThat(bodyOf(response)).isEqualTo("789");
+    }
+
+    @Test
+    public void respond_withMultipleRanges_shouldReturnMultipartByteranges() throws Exception {
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=0-1,8-");
+
+        var response = respond(headers);
+        var body = bodyOf(response);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getContentType().toString()).startsWith("multipart/byteranges");
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(body.length());
+        assertThat(body).contains("Content-Range: bytes 0-1/10\r\n\r\n01\r\n");
+        assertThat(body).contains("Content-Range: bytes 8-9/10\r\n\r\n89\r\n");
+        assertThat(body).endsWith("--" + response.getHeaders().getContentType().getParameter("boundary") + "--\r\n");
+    }
+
+    @Test
+    public void respond_withUnsatisfiableRange_shouldReturnRangeNotSatisfiable() {
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=10-20");
+
+        var response = respond(headers);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+    }
+
+    @Test
+    public void respond_withStaleIfRange_shouldReturnFullContent() throws Exception {
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=2-4");
+        headers.set(HttpHeaders.IF_RANGE, "\"other\"");
+
+        var response = respond(headers);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(bodyOf(response)).isEqualTo("0123456789");
+    }
+
+    private static ResponseEntity<StreamingResponseBody> respond(HttpHeaders headers) {
+        return RangeRequests.respond(headers, ETAG, MediaType.TEXT_PLAIN, CONTENT.length,
+                (position, count, outputStream) -> outputStream.write(CONTENT, (int) position, (int) count));
+    }
+
+    private static String bodyOf(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        var output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+        return output.toString(StandardCharsets.US_ASCII);
+    }
+}
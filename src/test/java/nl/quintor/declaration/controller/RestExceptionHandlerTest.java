@@ -0,0 +1,34 @@
+package nl.quintor.declaration.controller;
+
+import org.junit.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class RestExceptionHandlerTest {
+
+    private MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new OversizedUploadController())
+            .setControllerAdvice(new RestExceptionHandler())
+            .build();
+
+    @Test
+    public void upload_overContainerLimit_shouldAnswerPayloadTooLarge() throws Exception {
+        mockMvc.perform(post("/upload")).andExpect(status().isPayloadTooLarge());
+    }
+
+    /**
+     * Fails like the multipart parsing of the container does for an oversized file.
+     */
+    @RestController
+    static class OversizedUploadController {
+        @PostMapping("/upload")
+        public void upload() {
+            throw new MaxUploadSizeExceededException(20 * 1024 * 1024);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package nl.quintor.declaration.datasource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private static final Instant NOW = Instant.parse("2019-03-01T12:00:00Z");
+
+    private DriverManagerDataSource primary = new DriverManagerDataSource("jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1", "sa", "");
+    private DriverManagerDataSource replica = new DriverManagerDataSource("jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1", "sa", "");
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @Before
+    public void init() {
+        for (var database : List.of(primary, replica)) {
+            var jdbc = new JdbcTemplate(database);
+            jdbc.execute("create table marker (name varchar(16))");
+            jdbc.execute("create table replication_heartbeat (id int primary key, beat_at bigint)");
+            jdbc.update("insert into marker values (?)", database == primary ? "primary" : "replica");
+        }
+
+        routingDataSource = new ReplicaRoutingDataSource(primary, Map.of("replica-0", replica), Duration.ofMinutes(1));
+        routingDataSource.afterPropertiesSet();
+        var dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        var transactionManager = new DataSourceTransactionManager(dataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @After
+    public void cleanUp() {
+        SecurityContextHolder.clearContext();
+        for (var database : List.of(primary, replica)) {
+            new JdbcTemplate(database).execute("drop all objects");
+        }
+    }
+
+    @Test
+    public void readOnlyTransaction_shouldUseReplicaAndOthersThePrimary() {
+        assertThat(readOnly(this::marker)).isEqualTo("replica");
+        assertThat(readWrite(this::marker)).isEqualTo("primary");
+        assertThat(marker()).isEqualTo("primary");
+    }
+
+    @Test
+    public void readOnlyTransaction_afterWriteOfSameUser_shouldUsePrimary() {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("employee", ""));
+        readWrite.execute(status -> jdbcTemplate.update("update marker set name = name"));
+
+        assertThat(readOnly(this::marker)).isEqualTo("primary");
+
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("manager", ""));
+        assertThat(readOnly(this::marker)).isEqualTo("replica");
+    }
+
+    @Test
+    public void readOnlyTransaction_inPrimaryReadContext_shouldUsePrimary() {
+        assertThat(PrimaryReadContext.call(() -> readOnly(this::marker))).isEqualTo("primary");
+        assertThat(readOnly(this::marker)).isEqualTo("replica");
+    }
+
+    @Test
+    public void probe_withLaggingReplica_shouldFallBackToPrimaryUntilItCatchesUp() {
+        var monitor = new ReplicaLagMonitor(primary, routingDataSource.getReplicaDataSources(), routingDataSource,
+                Duration.ofSeconds(5), Clock.fixed(NOW, ZoneOffset.UTC));
+        new JdbcTemplate(replica).update("insert into replication_heartbeat values (1, ?)", NOW.minusSeconds(60).toEpochMilli());
+
+        monitor.probe();
+
+        assertThat(routingDataSource.isHealthy("replica-0")).isFalse();
+        assertThat(readOnly(this::marker)).isEqualTo("primary");
+
+        // Replication catches up
+        new JdbcTemplate(replica).update("update replication_heartbeat set beat_at = ?", NOW.toEpochMilli());
+        monitor.probe();
+
+        assertThat(routingDataSource.isHealthy("replica-0")).isTrue();
+        assertThat(readOnly(this::marker)).isEqualTo("replica");
+    }
+
+    private String readOnly(Supplier<String> query) {
+        return readOnly.execute(status -> query.get());
+    }
+
+    private String readWrite(Supplier<String> query) {
+        return readWrite.execute(status -> query.get());
+    }
+
+    private String marker() {
+        return jdbcTemplate.queryForObject("select name from marker", String.class);
+    }
+}
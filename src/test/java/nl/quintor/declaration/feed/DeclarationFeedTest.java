@@ -0,0 +1,145 @@
+package nl.quintor.declaration.feed;
+
+import nl.quintor.declaration.cluster.RemoteDeclarationsChangedEvent;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.service.DeclarationChange;
+import nl.quintor.declaration.service.DeclarationChangedEvent;
+import nl.quintor.declaration.service.DeclarationService;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DeclarationFeedTest {
+
+    private DeclarationService declarationService = mock(DeclarationService.class);
+    private ExecutorService sender = Executors.newSingleThreadExecutor();
+    private DeclarationFeed feed = new DeclarationFeed(declarationService, 4, Duration.ofMinutes(1), sender);
+
+    @After
+    public void shutdown() {
+        feed.shutdown();
+    }
+
+    @Test
+    public void onDeclarationChanged_withSubscriberForEmployee_shouldOnlySendTheirChanges() throws Exception {
+        var subscriber = new RecordingEmitter(3);
+        feed.subscribe(subscriber, "employee", null);
+        var own = Declaration.builder().id(1).employee("employee").build();
+        var approved = own.toBuilder().approvedLocal(true).version(1).build();
+        var other = Declaration.builder().id(2).employee("manager").build();
+
+        feed.onDeclarationChanged(new DeclarationChangedEvent(List.of(
+                new DeclarationChange(null, own),
+                new DeclarationChange(null, other),
+                new DeclarationChange(own, approved),
+                new DeclarationChange(approved, approved.toBuilder().costs(5).version(2).build()))));
+
+        assertThat(subscriber.await()).containsExactly("created", "approved", "updated");
+    }
+
+    @Test
+    public void onDeclarationChanged_withSlowSubscriber_shouldDropEventsAndSendResync() throws Exception {
+        var sending = new CountDownLatch(1);
+        var blocked = new CountDownLatch(1);
+        var subscriber = new RecordingEmitter(6) {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                sending.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(builder);
+            }
+        };
+        feed.subscribe(subscriber, null, null);
+
+        publishCreated(1);
+        sending.await();
+        // 2 to 5 fill the buffer, 6 overflows it and 7 to 10 fill it again
+        for (var id = 2; id <= 10; id++) {
+            publishCreated(id);
+        }
+        blocked.countDown();
+
+        assertThat(subscriber.await()).containsExactly("created", "resync", "created", "created", "created", "created");
+    }
+
+    @Test
+    public void onRemoteChange_withSubscriberForInstance_shouldSendCurrentDeclaration() throws Exception {
+        var subscriber = new RecordingEmitter(1);
+        feed.subscribe(subscriber, null, "instanceid");
+        when(declarationService.findAllById(List.of(1L, 2L))).thenReturn(List.of(
+                Declaration.builder().id(1).instanceId("instanceid").build(),
+                Declaration.builder().id(2).instanceId("other").build()));
+
+        feed.onRemoteChange(new RemoteDeclarationsChangedEvent(List.of(1L, 2L)));
+
+        assertThat(subscriber.await()).containsExactly("updated");
+    }
+
+    @Test
+    public void onDeclarationChanged_withSubscriberThatWentAway_shouldRemoveIt() throws Exception {
+        var gone = new CountDownLatch(1);
+        feed.subscribe(new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                gone.countDown();
+                throw new IOException("Broken pipe");
+            }
+        }, null, null);
+
+        publishCreated(1);
+        gone.await();
+        sender.shutdown();
+        sender.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertThat(feed.getSubscriberCount()).isEqualTo(0);
+    }
+
+    private void publishCreated(long id) {
+        var declaration = Declaration.builder().id(id).employee("employee").build();
+        feed.onDeclarationChanged(new DeclarationChangedEvent(List.of(new DeclarationChange(null, declaration))));
+    }
+
+    /**
+     * Records the names of the events it's sent, the emitter isn't connected to a response.
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private List<String> names = new CopyOnWriteArrayList<>();
+        private CountDownLatch received;
+
+        RecordingEmitter(int expected) {
+            this.received = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            var text = builder.build().stream()
+                    .map(data -> String.valueOf(data.getData()))
+                    .collect(Collectors.joining());
+            names.add(text.substring(text.indexOf("event:") + 6, text.indexOf('\n', text.indexOf("event:"))));
+            received.countDown();
+        }
+
+        List<String> await() throws InterruptedException {
+            assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+            return names;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package nl.quintor.declaration.reporting;
+
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.service.DeclarationChange;
+import nl.quintor.declaration.service.DeclarationChangedEvent;
+import nl.quintor.declaration.service.DeclarationService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class ReportingServiceTest {
+
+    private DeclarationService declarationService = mock(DeclarationService.class);
+    private ReportingService reportingService;
+    private List<Declaration> declarations;
+
+    @Before
+    public void init() {
+        // Enough rows to make the scans split into several fork/join tasks
+        declarations = IntStream.range(0, 100_000)
+                .mapToObj(i -> Declaration.builder()
+                        .id(i + 1)
+                        .costs(i % 100)
+                        .employee("employee" + (i % 10))
+                        .instanceId(i % 2 == 0 ? "even" : "odd")
+                        .approvedLocal(i % 4 == 0)
+                        .build())
+                .collect(Collectors.toList());
+        doAnswer(invocation -> {
+            Consumer<Declaration> consumer = invocation.getArgument(1);
+            declarations.forEach(consumer);
+            return null;
+        }).when(declarationService).forEach(isNull(), any());
+
+        reportingService = new ReportingService(declarationService, 4);
+        reportingService.refresh();
+    }
+
+    @After
+    public void shutdown() {
+        reportingService.shutdown();
+    }
+
+    @Test
+    public void costs_groupedByInstance_shouldAggregateAllRows() {
+        var groups = reportingService.costs(new ReportFilter(), ReportGrouping.INSTANCE);
+
+        assertThat(groups).extracting(CostGroup::getGroup).containsExactly("even", "odd");
+        var even = groups.get(0);
+        assertThat(even.getCount()).isEqualTo(50_000);
+        assertThat(even.getApprovedLocalCount()).isEqualTo(25_000);
+        assertThat(even.getMinCosts()).isEqualTo(0);
+        assertThat(even.getMaxCosts()).isEqualTo(98);
+        assertThat(even.getTotalCosts()).isEqualTo(50_000 * 49.0);
+    }
+
+    @Test
+    public void costs_withFilter_shouldOnlyAggregateMatchingRows() {
+        var filter = ReportFilter.builder().employee("employee3").minCosts(50.0).build();
+
+        var groups = reportingService.costs(filter, ReportGrouping.NONE);
+
+        assertThat(groups).hasSize(1);
+        assertThat(groups.get(0).getCount()).isEqualTo(5_000);
+        assertThat(groups.get(0).getApprovedLocalCount()).isEqualTo(0);
+        assertThat(reportingService.costs(ReportFilter.builder().employee("nobody").build(), ReportGrouping.NONE)).isEmpty();
+    }
+
+    @Test
+    public void histogram_withBuckets_shouldCountCostsPerBucket() {
+        var histogram = reportingService.histogram(new ReportFilter(), 10, 10, 5);
+
+        assertThat(histogram.getCounts()).containsExactly(10_000, 10_000, 10_000, 10_000, 10_000);
+        assertThat(histogram.getBelow()).isEqualTo(10_000);
+        assertThat(histogram.getAbove()).isEqualTo(40_000);
+    }
+
+    @Test
+    public void onDeclarationChanged_withNewerVersions_shouldUpdateSnapshotIncrementally() {
+        var before = declarations.get(0);
+        var after = before.toBuilder().costs(1000).approvedGlobal(true).version(1).build();
+        var created = Declaration.builder().id(200_000).costs(5).employee("new").instanceId("even").build();
+
+        reportingService.onDeclarationChanged(new DeclarationChangedEvent(List.of(
+                new DeclarationChange(before, after), new DeclarationChange(null, created))));
+        // A late event with an older version must not overwrite the newer state
+        reportingService.onDeclarationChanged(new DeclarationChangedEvent(List.of(new DeclarationChange(null, before))));
+
+        var even = reportingService.costs(ReportFilter.builder().instanceId("even").build(), ReportGrouping.NONE).get(0);
+        assertThat(even.getCount()).isEqualTo(50_001);
+        assertThat(even.getMaxCosts()).isEqualTo(1000);
+        assertThat(even.getApprovedGlobalCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void refresh_failingHalfway_shouldKeepCurrentSnapshot() {
+        doAnswer(invocation -> {
+            Consumer<Declaration> consumer = invocation.getArgument(1);
+            declarations.subList(0, 10).forEach(consumer);
+            throw new IllegalStateException("Connection lost");
+        }).when(declarationService).forEach(isNull(), any());
+
+        assertThatThrownBy(() -> reportingService.refresh()).isExactlyInstanceOf(IllegalStateException.class);
+        var created = Declaration.builder().id(200_000).costs(5).employee("new").instanceId("even").build();
+        reportingService.onDeclarationChanged(new DeclarationChangedEvent(List.of(new DeclarationChange(null, created))));
+
+        var all = reportingService.costs(new ReportFilter(), ReportGrouping.NONE).get(0);
+        assertThat(all.getCount()).isEqualTo(100_001);
+    }
+}
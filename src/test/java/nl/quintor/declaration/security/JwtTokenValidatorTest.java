@@ -0,0 +1,83 @@
+package nl.quintor.declaration.security;
+
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JwtTokenValidatorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private JwtTokenValidator tokenValidator;
+
+    @Before
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        tokenValidator = new JwtTokenValidator(100, Duration.ofMinutes(5), meterRegistry);
+    }
+
+    @Test
+    public void getAuthentication_withValidToken_shouldReturnUserAndRoles() {
+        var token = token("employee", "ROLE_EMPLOYEE,ROLE_MANAGER", new Date(System.currentTimeMillis() + 60_000));
+
+        var authentication = tokenValidator.getAuthentication(token).get();
+
+        assertThat(authentication.getPrincipal()).isEqualTo("employee");
+        assertThat(authentication.getAuthorities()).extracting("authority")
+                .containsExactly("ROLE_EMPLOYEE", "ROLE_MANAGER");
+    }
+
+    @Test
+    public void getAuthentication_withSameTokenTwice_shouldServeSecondFromCache() {
+        var token = token("employee", "ROLE_EMPLOYEE", new Date(System.currentTimeMillis() + 60_000));
+
+        var first = tokenValidator.getAuthentication(token).get();
+        var second = tokenValidator.getAuthentication(token).get();
+
+        assertThat(second.getPrincipal()).isEqualTo(first.getPrincipal());
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "jwt.authentications").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void getAuthentication_withSameTokenTwice_shouldReturnSeparateAuthentications() {
+        var token = token("employee", "ROLE_EMPLOYEE", new Date(System.currentTimeMillis() + 60_000));
+
+        var first = tokenValidator.getAuthentication(token).get();
+        first.setAuthenticated(false);
+        var second = tokenValidator.getAuthentication(token).get();
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.isAuthenticated()).isTrue();
+    }
+
+    @Test
+    public void getAuthentication_withTokensSharingRoles_shouldShareAuthorities() {
+        var expiration = new Date(System.currentTimeMillis() + 60_000);
+
+        var first = tokenValidator.getAuthentication(token("employee", "ROLE_EMPLOYEE", expiration)).get();
+        var second = tokenValidator.getAuthentication(token("otherEmployee", "ROLE_EMPLOYEE", expiration)).get();
+
+        assertThat(second.getAuthorities().iterator().next()).isSameAs(first.getAuthorities().iterator().next());
+    }
+
+    @Test
+    public void getAuthentication_withExpiredToken_shouldReturnEmpty() {
+        var token = token("employee", "ROLE_EMPLOYEE", new Date(System.currentTimeMillis() - 60_000));
+
+        assertThat(tokenValidator.getAuthentication(token)).isEmpty();
+    }
+
+    private static String token(String subject, String roles, Date expiration) {
+        return Jwts.builder()
+                .setSubject(subject)
+                .claim("roles", roles)
+                .setExpiration(expiration)
+                .compact();
+    }
+}
@@ -0,0 +1,84 @@
+package nl.quintor.declaration.service;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.quintor.declaration.datasource.ShardRouter;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.repository.DeclarationRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares reading the declaration list as managed entities with reading it as plain objects, both in a read-only
+ * transaction per request like the GET endpoints do. Reports allocation and time per request. Not part of the
+ * default build, run it with {@code mvn test -Pbenchmark}.
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class DeclarationReadBenchmarkTest {
+
+    private static final int ROWS = 2000;
+    private static final int WARMUP = 30;
+    private static final int REQUESTS = 100;
+
+    @Autowired
+    private DeclarationRepository declarationRepository;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Before
+    public void init() {
+        declarationRepository.deleteAll();
+        declarationRepository.saveAll(IntStream.range(0, ROWS)
+                .mapToObj(i -> Declaration.builder().costs(i).employee("employee" + i % 10).instanceId("instance").build())
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void findAll_asViews_shouldAllocateLessThanAsEntities() {
+        var entities = measure(declarationRepository::findAll);
+        var views = measure(declarationRepository::findAllViews);
+
+        log.info("{} declarations per request, entities: {} KB and {} us, views: {} KB and {} us", ROWS,
+                entities[0] / 1024, entities[1] / 1000, views[0] / 1024, views[1] / 1000);
+        assertThat(views[0]).isLessThan(entities[0]);
+    }
+
+    /**
+     * @return bytes allocated and nanoseconds spent per request
+     */
+    private long[] measure(Supplier<List<Declaration>> read) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var thread = Thread.currentThread().getId();
+        for (var i = 0; i < WARMUP; i++) {
+            assertThat(request(read)).hasSize(ROWS);
+        }
+
+        var allocated = threads.getThreadAllocatedBytes(thread);
+        var started = System.nanoTime();
+        for (var i = 0; i < REQUESTS; i++) {
+            request(read);
+        }
+        var elapsed = System.nanoTime() - started;
+        return new long[]{(threads.getThreadAllocatedBytes(thread) - allocated) / REQUESTS, elapsed / REQUESTS};
+    }
+
+    private List<Declaration> request(Supplier<List<Declaration>> read) {
+        return shardRouter.inShard(ShardRouter.DEFAULT_SHARD, true, read);
+    }
+}
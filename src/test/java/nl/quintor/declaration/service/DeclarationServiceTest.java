@@ -0,0 +1,387 @@
+package nl.quintor.declaration.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.quintor.declaration.config.CacheConfig;
+import nl.quintor.declaration.datasource.ShardRouter;
+import nl.quintor.declaration.model.ApprovalLevel;
+import nl.quintor.declaration.model.ApprovalRequest;
+import nl.quintor.declaration.model.BatchItemResult;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.model.DeclarationFilter;
+import nl.quintor.declaration.model.Image;
+import nl.quintor.declaration.repository.DeclarationRepository;
+import nl.quintor.declaration.repository.ImageRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class DeclarationServiceTest {
+
+    @Autowired
+    private DeclarationService declarationService;
+
+    @Autowired
+    private DeclarationRepository declarationRepository;
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Before
+    public void init() {
+        // Rows are reset past the service, so nothing it cached is valid anymore
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        declarationRepository.deleteAll();
+        declarationRepository.saveAll(IntStream.range(0, 5)
+                .mapToObj(i -> Declaration.builder()
+                        .costs(10.0 + i)
+                        .employee(i % 2 == 0 ? "employee" : "manager")
+                        .instanceId("instance")
+                        .approvedLocal(i < 2)
+                        .build())
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void findPage_withoutFilter_shouldWalkAllDeclarationsInIdOrder() {
+        var noFilter = new DeclarationFilter();
+
+        var first = declarationService.findPage(noFilter, null, 2);
+        var second = declarationService.findPage(noFilter, first.getNextCursor(), 2);
+        var last = declarationService.findPage(noFilter, second.getNextCursor(), 2);
+
+        assertThat(first.getItems()).size().isEqualTo(2);
+        assertThat(second.getItems()).size().isEqualTo(2);
+        assertThat(last.getItems()).size().isEqualTo(1);
+        assertThat(last.getNextCursor()).isNull();
+        assertThat(second.getItems().get(0).getId()).isGreaterThan(first.getItems().get(1).getId());
+    }
+
+    @Test
+    public void findPage_withEmployeeAndApprovalFilter_shouldOnlyReturnMatches() {
+        var filter = DeclarationFilter.builder().employee("employee").approvedLocal(false).build();
+
+        var page = declarationService.findPage(filter, null, 10);
+
+        assertThat(page.getItems()).size().isEqualTo(2);
+        assertThat(page.getItems()).allMatch(d -> d.getEmployee().equals("employee") && !d.isApprovedLocal());
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void forEach_withEmployee_shouldVisitOnlyHisDeclarationsInIdOrder() {
+        var visited = new ArrayList<Declaration>();
+
+        declarationService.forEach("employee", visited::add);
+
+        assertThat(visited).size().isEqualTo(3);
+        assertThat(visited).allMatch(d -> d.getEmployee().equals("employee"));
+        assertThat(visited).isSortedAccordingTo((a, b) -> Long.compare(a.getId(), b.getId()));
+    }
+
+    @Test
+    public void findVisibleById_withEmployee_shouldOnlyFindHisOwnDeclarations() {
+        var employee = new UsernamePasswordAuthenticationToken("employee", "", AuthorityUtils.createAuthorityList("ROLE_EMPLOYEE"));
+        var own = declarationRepository.findAllByEmployee("employee").get(0);
+        var someoneElses = declarationRepository.findAllByEmployee("manager").get(0);
+
+        assertThat(declarationService.findVisibleById(own.getId(), employee)).isPresent();
+        assertThat(declarationService.findVisibleById(someoneElses.getId(), employee)).isEmpty();
+    }
+
+    @Test
+    public void findVisibleExpandedById_withEmployee_shouldOnlyFindHisOwnDeclarations() {
+        var employee = new UsernamePasswordAuthenticationToken("employee", "", AuthorityUtils.createAuthorityList("ROLE_EMPLOYEE"));
+        var own = declarationRepository.findAllByEmployee("employee").get(0);
+        var someoneElses = declarationRepository.findAllByEmployee("manager").get(0);
+
+        assertThat(declarationService.findVisibleExpandedById(own.getId(), employee)).isPresent();
+        assertThat(declarationService.findVisibleExpandedById(someoneElses.getId(), employee)).isEmpty();
+    }
+
+    @Test
+    public void findVisibleById_afterDeclarationMovedToEmployee_shouldFindIt() {
+        var employee = new UsernamePasswordAuthenticationToken("employee", "", AuthorityUtils.createAuthorityList("ROLE_EMPLOYEE"));
+        var someoneElses = declarationService.save(Declaration.builder().costs(1.0).employee("manager").build());
+        assertThat(declarationService.findVisibleById(someoneElses.getId(), employee)).isEmpty();
+
+        declarationService.save(someoneElses.toBuilder().employee("employee").build());
+
+        assertThat(declarationService.findVisibleById(someoneElses.getId(), employee)).isPresent();
+    }
+
+    @Test
+    public void findVisibleById_withManager_shouldFindAnyDeclaration() {
+        var manager = new UsernamePasswordAuthenticationToken("manager", "", AuthorityUtils.createAuthorityList("ROLE_MANAGER"));
+        var someoneElses = declarationRepository.findAllByEmployee("employee").get(0);
+
+        assertThat(declarationService.findVisibleById(someoneElses.getId(), manager)).isPresent();
+    }
+
+    @Test
+    public void createAll_withEmployee_shouldOnlyCreateHisOwnDeclarations() {
+        var employee = new UsernamePasswordAuthenticationToken("employee", "", AuthorityUtils.createAuthorityList("ROLE_EMPLOYEE"));
+        var batch = List.of(
+                Declaration.builder().costs(1.0).employee("employee").build(),
+                Declaration.builder().costs(2.0).employee("manager").build(),
+                Declaration.builder().costs(3.0).employee("employee").build());
+
+        var results = declarationService.createAll(batch, employee);
+
+        assertThat(results).extracting(BatchItemResult::getStatus).containsExactly(201, 403, 201);
+        assertThat(declarationRepository.findById(results.get(0).getId())).isPresent();
+        assertThat(declarationRepository.findById(results.get(2).getId())).isPresent();
+        assertThat(declarationRepository.count()).isEqualTo(7);
+    }
+
+    @Test
+    public void createAll_withManagerAndMoreItemsThanOneJdbcBatch_shouldCreateAll() {
+        var manager = new UsernamePasswordAuthenticationToken("manager", "", AuthorityUtils.createAuthorityList("ROLE_MANAGER"));
+        var batch = IntStream.range(0, 120)
+                .mapToObj(i -> Declaration.builder().costs(i).employee("employee").build())
+                .collect(Collectors.toList());
+
+        var results = declarationService.createAll(batch, manager);
+
+        assertThat(results).allMatch(result -> result.getStatus() == 201);
+        assertThat(results).extracting(BatchItemResult::getId).doesNotHaveDuplicates();
+        assertThat(declarationRepository.count()).isEqualTo(125);
+    }
+
+    @Test
+    public void updateAll_withEmployee_shouldReportResultPerItem() {
+        var employee = new UsernamePasswordAuthenticationToken("employee", "", AuthorityUtils.createAuthorityList("ROLE_EMPLOYEE"));
+        var own = declarationRepository.findAllByEmployee("employee").get(0);
+        var someoneElses = declarationRepository.findAllByEmployee("manager").get(0);
+        own.setCosts(99.0);
+        someoneElses.setCosts(99.0);
+
+        var results = declarationService.updateAll(List.of(own, someoneElses, Declaration.builder().id(-1).build()), employee);
+
+        assertThat(results).extracting(BatchItemResult::getStatus).containsExactly(200, 403, 404);
+        assertThat(declarationRepository.findById(own.getId()).get().getCosts()).isEqualTo(99.0);
+        assertThat(declarationRepository.findById(someoneElses.getId()).get().getCosts()).isNotEqualTo(99.0);
+    }
+
+    @Test
+    public void createAll_withTooManyItems_shouldThrowException() {
+        var manager = new UsernamePasswordAuthenticationToken("manager", "", AuthorityUtils.createAuthorityList("ROLE_MANAGER"));
+        var batch = IntStream.range(0, 10001)
+                .mapToObj(i -> Declaration.builder().build())
+                .collect(Collectors.toList());
+
+        assertThatThrownBy(() -> declarationService.createAll(batch, manager))
+                .isExactlyInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    public void approve_withEmployeeFilter_shouldOnlyApproveAndReturnUnapprovedDeclarations() {
+        var request = ApprovalRequest.builder().level(ApprovalLevel.LOCAL).employee("employee").build();
+
+        var approved = declarationService.approve(request);
+
+        // Employee owns the declarations at index 0, 2 and 4, the first one was already approved locally
+        assertThat(approved.getIds()).size().isEqualTo(2);
+        assertThat(approved.isMore()).isFalse();
+        assertThat(declarationRepository.findAllByEmployee("employee")).allMatch(Declaration::isApprovedLocal);
+        assertThat(declarationRepository.findAllByEmployee("manager")).anyMatch(d -> !d.isApprovedLocal());
+        assertThat(declarationService.approve(request).getIds()).isEmpty();
+    }
+
+    @Test
+    public void approve_withMoreDeclarationsThanMaxBatchSize_shouldApproveInChunks() {
+        var service = new DeclarationService(declarationRepository, imageRepository, shardRouter, eventPublisher,
+                cacheManager, 50, 500, 1, 50);
+        var request = ApprovalRequest.builder().level(ApprovalLevel.LOCAL).employee("employee").build();
+
+        var first = service.approve(request);
+        var second = service.approve(request);
+
+        assertThat(first.getIds()).size().isEqualTo(1);
+        assertThat(first.isMore()).isTrue();
+        assertThat(second.getIds()).size().isEqualTo(1);
+        assertThat(second.isMore()).isFalse();
+        assertThat(declarationRepository.findAllByEmployee("employee")).allMatch(Declaration::isApprovedLocal);
+    }
+
+    @Test
+    public void approve_withIds_shouldOnlySetFlagOfGivenLevel() {
+        var ids = declarationRepository.findAllByEmployee("manager").stream()
+                .map(Declaration::getId)
+                .collect(Collectors.toList());
+
+        var approved = declarationService.approve(ApprovalRequest.builder().level(ApprovalLevel.GLOBAL).ids(ids).build());
+
+        assertThat(approved.getIds()).containsExactlyInAnyOrderElementsOf(ids);
+        assertThat(declarationRepository.findAllById(ids)).allMatch(Declaration::isApprovedGlobal);
+        assertThat(declarationRepository.findAllById(ids)).anyMatch(d -> !d.isApprovedLocal());
+    }
+
+    @Test
+    public void approve_withoutSelection_shouldThrowException() {
+        assertThatThrownBy(() -> declarationService.approve(ApprovalRequest.builder().level(ApprovalLevel.LOCAL).build()))
+                .isExactlyInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    public void patch_withCurrentVersion_shouldOnlyUpdatePatchedFieldsAndBumpVersion() throws Exception {
+        var employee = new UsernamePasswordAuthenticationToken("employee", "", AuthorityUtils.createAuthorityList("ROLE_EMPLOYEE"));
+        var own = declarationRepository.findAllByEmployee("employee").get(0);
+        var patch = objectMapper.readTree("{\"version\": " + own.getVersion() + ", \"costs\": 42.5, \"instanceId\": null}");
+
+        var version = declarationService.patch(own.getId(), patch, employee);
+
+        var patched = declarationRepository.findById(own.getId()).get();
+        assertThat(version).isEqualTo(own.getVersion() + 1);
+        assertThat(patched.getVersion()).isEqualTo(version);
+        assertThat(patched.getCosts()).isEqualTo(42.5);
+        assertThat(patched.getInstanceId()).isNull();
+        assertThat(patched.getEmployee()).isEqualTo("employee");
+    }
+
+    @Test
+    public void patch_withOutdatedVersion_shouldThrowConflict() throws Exception {
+        var employee = new UsernamePasswordAuthenticationToken("employee", "", AuthorityUtils.createAuthorityList("ROLE_EMPLOYEE"));
+        var own = declarationRepository.findAllByEmployee("employee").get(0);
+        var patch = objectMapper.readTree("{\"version\": " + own.getVersion() + ", \"costs\": 1}");
+        declarationService.patch(own.getId(), patch, employee);
+
+        assertThatThrownBy(() -> declarationService.patch(own.getId(), patch, employee))
+                .isExactlyInstanceOf(ResponseStatusException.class)
+                .hasFieldOrPropertyWithValue("status", HttpStatus.CONFLICT);
+    }
+
+    @Test
+    public void patch_withEmployeeAndSomeoneElsesDeclaration_shouldThrowNotFound() throws Exception {
+        var employee = new UsernamePasswordAuthenticationToken("employee", "", AuthorityUtils.createAuthorityList("ROLE_EMPLOYEE"));
+        var someoneElses = declarationRepository.findAllByEmployee("manager").get(0);
+        var patch = objectMapper.readTree("{\"version\": " + someoneElses.getVersion() + ", \"costs\": 1}");
+
+        assertThatThrownBy(() -> declarationService.patch(someoneElses.getId(), patch, employee))
+                .isExactlyInstanceOf(ResponseStatusException.class)
+                .hasFieldOrPropertyWithValue("status", HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void patch_withEmployeeApprovingHisOwnDeclaration_shouldThrowForbidden() throws Exception {
+        var employee = new UsernamePasswordAuthenticationToken("employee", "", AuthorityUtils.createAuthorityList("ROLE_EMPLOYEE"));
+        var own = declarationRepository.findAllByEmployee("employee").get(0);
+        var patch = objectMapper.readTree("{\"version\": " + own.getVersion() + ", \"approvedGlobal\": true}");
+
+        assertThatThrownBy(() -> declarationService.patch(own.getId(), patch, employee))
+                .isExactlyInstanceOf(ResponseStatusException.class)
+                .hasFieldOrPropertyWithValue("status", HttpStatus.FORBIDDEN);
+    }
+
+    @Test
+    public void updateAll_withOutdatedVersion_shouldReportConflict() {
+        var manager = new UsernamePasswordAuthenticationToken("manager", "", AuthorityUtils.createAuthorityList("ROLE_MANAGER"));
+        var declaration = declarationRepository.findAllByEmployee("manager").get(0);
+        declarationService.approve(ApprovalRequest.builder().level(ApprovalLevel.GLOBAL).ids(List.of(declaration.getId())).build());
+
+        var results = declarationService.updateAll(List.of(declaration), manager);
+
+        assertThat(results).extracting(BatchItemResult::getStatus).containsExactly(409);
+    }
+
+    @Test
+    public void findById_calledTwice_shouldServeSecondCallFromCache() {
+        var id = declarationRepository.findAllByEmployee("employee").get(0).getId();
+        var stats = ((CaffeineCache) cacheManager.getCache(CacheConfig.DECLARATIONS)).getNativeCache();
+        var hits = stats.stats().hitCount();
+
+        var first = declarationService.findById(id);
+        var second = declarationService.findById(id);
+
+        assertThat(second.get()).isSameAs(first.get());
+        assertThat(stats.stats().hitCount()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    public void findAllById_withCachedDeclaration_shouldReadCurrentRowsPastTheCache() {
+        var ids = declarationRepository.findAllByEmployee("employee").stream()
+                .map(Declaration::getId)
+                .collect(Collectors.toList());
+        declarationService.findById(ids.get(0));
+        var changed = declarationRepository.findById(ids.get(0)).get();
+        changed.setCosts(99.0);
+        declarationRepository.save(changed);
+
+        var found = declarationService.findAllById(List.of(ids.get(0), ids.get(1), -1L));
+
+        assertThat(found).extracting(Declaration::getId).containsExactly(ids.get(0), ids.get(1));
+        assertThat(found.get(0).getCosts()).isEqualTo(99.0);
+    }
+
+    @Test
+    public void findAllByEmployee_afterSave_shouldNotReturnStaleResults() {
+        var employee = new UsernamePasswordAuthenticationToken("employee", "", AuthorityUtils.createAuthorityList("ROLE_EMPLOYEE"));
+        var cached = declarationService.findAllByEmployee("employee");
+        var changed = cached.get(0).toBuilder().costs(77.0).build();
+
+        declarationService.save(Declaration.builder().costs(1.0).employee("employee").build());
+        declarationService.save(changed);
+
+        assertThat(declarationService.findAllByEmployee("employee")).size().isEqualTo(cached.size() + 1);
+        assertThat(declarationService.findVisibleById(changed.getId(), employee).get().getCosts()).isEqualTo(77.0);
+    }
+
+    @Test
+    public void findPage_withInvalidCursor_shouldThrowException() {
+        assertThatThrownBy(() -> declarationService.findPage(new DeclarationFilter(), "not a cursor", 2))
+                .isExactlyInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    public void findAllExpanded_withReceipts_shouldEmbedMetadataOfOwnImagesOnly() throws Exception {
+        var own = imageRepository.save(Image.builder().employee("employee").name("receipt").size(42).contentKey("abc").build());
+        var someoneElses = imageRepository.save(Image.builder().employee("manager").name("other").build());
+        var withOwn = declarationService.save(Declaration.builder().employee("employee").imageId(own.getId()).build());
+        var withOther = declarationService.save(Declaration.builder().employee("employee").imageId(someoneElses.getId()).build());
+
+        var expanded = declarationService.findAllExpanded("employee").stream()
+                .filter(declaration -> declaration.getDeclaration().getImageId() != 0)
+                .collect(Collectors.toList());
+
+        assertThat(expanded).extracting(declaration -> declaration.getDeclaration().getId()).containsExactly(withOwn.getId(), withOther.getId());
+        assertThat(expanded.get(0).getImage().getName()).isEqualTo("receipt");
+        assertThat(expanded.get(0).getImage().getHash()).isEqualTo("abc");
+        assertThat(expanded.get(1).getImage()).isNull();
+        var json = objectMapper.readTree(objectMapper.writeValueAsString(expanded.get(0)));
+        assertThat(json.get("id").asLong()).isEqualTo(withOwn.getId());
+        assertThat(json.get("image").get("size").asLong()).isEqualTo(42);
+    }
+}
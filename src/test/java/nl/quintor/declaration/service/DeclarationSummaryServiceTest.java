@@ -0,0 +1,124 @@
+package nl.quintor.declaration.service;
+
+import nl.quintor.declaration.model.ApprovalLevel;
+import nl.quintor.declaration.model.ApprovalRequest;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.model.DeclarationSummary;
+import nl.quintor.declaration.model.SummaryDimension;
+import nl.quintor.declaration.repository.DeclarationRepository;
+import nl.quintor.declaration.repository.DeclarationSummaryRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class DeclarationSummaryServiceTest {
+
+    @Autowired
+    private DeclarationSummaryService declarationSummaryService;
+
+    @Autowired
+    private DeclarationService declarationService;
+
+    @Autowired
+    private DeclarationRepository declarationRepository;
+
+    @Autowired
+    private DeclarationSummaryRepository declarationSummaryRepository;
+
+    @Before
+    public void init() {
+        declarationRepository.deleteAll();
+        declarationSummaryRepository.deleteAll();
+    }
+
+    @Test
+    public void save_withNewAndChangedDeclarations_shouldKeepSummariesUpToDate() {
+        var first = declarationService.save(Declaration.builder().costs(10.0).employee("employee").instanceId("a").build());
+        declarationService.save(Declaration.builder().costs(5.0).employee("employee").instanceId("b").build());
+
+        first.setCosts(20.0);
+        first.setInstanceId("b");
+        declarationService.save(first);
+
+        assertThat(summary(SummaryDimension.EMPLOYEE, "employee").getDeclarationCount()).isEqualTo(2);
+        assertThat(summary(SummaryDimension.EMPLOYEE, "employee").getTotalCosts()).isEqualTo(25.0);
+        assertThat(summary(SummaryDimension.INSTANCE, "a").getDeclarationCount()).isEqualTo(0);
+        assertThat(summary(SummaryDimension.INSTANCE, "b").getDeclarationCount()).isEqualTo(2);
+        assertThat(summary(SummaryDimension.INSTANCE, "b").getTotalCosts()).isEqualTo(25.0);
+    }
+
+    @Test
+    public void save_withConcurrentFirstDeclarationsOfGroup_shouldCountAll() throws Exception {
+        var writers = 8;
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(writers);
+        try {
+            var saves = IntStream.range(0, writers)
+                    .mapToObj(i -> executor.submit(() -> {
+                        start.await();
+                        return declarationService.save(Declaration.builder().costs(1.0).employee("newcomer").instanceId("new").build());
+                    }))
+                    .collect(Collectors.toList());
+            start.countDown();
+            for (var save : saves) {
+                save.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(summary(SummaryDimension.EMPLOYEE, "newcomer").getDeclarationCount()).isEqualTo(writers);
+        assertThat(summary(SummaryDimension.INSTANCE, "new").getTotalCosts()).isEqualTo(8.0);
+    }
+
+    @Test
+    public void approve_withDeclarationsOfEmployee_shouldCountApprovals() {
+        declarationService.save(Declaration.builder().costs(10.0).employee("employee").instanceId("a").build());
+        declarationService.save(Declaration.builder().costs(5.0).employee("employee").instanceId("a").approvedLocal(true).build());
+
+        declarationService.approve(ApprovalRequest.builder().level(ApprovalLevel.LOCAL).employee("employee").build());
+        declarationService.approve(ApprovalRequest.builder().level(ApprovalLevel.GLOBAL).employee("employee").build());
+
+        var summary = summary(SummaryDimension.INSTANCE, "a");
+        assertThat(summary.getApprovedLocalCount()).isEqualTo(2);
+        assertThat(summary.getApprovedGlobalCount()).isEqualTo(2);
+        assertThat(summary.getTotalCosts()).isEqualTo(15.0);
+    }
+
+    @Test
+    public void reconcile_withDeclarationsWrittenPastTheService_shouldRepairSummaries() {
+        declarationService.save(Declaration.builder().costs(10.0).employee("employee").instanceId("a").build());
+        declarationRepository.save(Declaration.builder().costs(5.0).employee("employee").instanceId("a").approvedGlobal(true).build());
+        declarationSummaryRepository.save(DeclarationSummary.builder()
+                .dimension(SummaryDimension.EMPLOYEE).groupKey("nobody").declarationCount(3).build());
+
+        declarationSummaryService.reconcile();
+
+        var summary = summary(SummaryDimension.EMPLOYEE, "employee");
+        assertThat(summary.getDeclarationCount()).isEqualTo(2);
+        assertThat(summary.getTotalCosts()).isEqualTo(15.0);
+        assertThat(summary.getApprovedGlobalCount()).isEqualTo(1);
+        assertThat(declarationSummaryService.findAll(SummaryDimension.EMPLOYEE))
+                .extracting(DeclarationSummary::getGroupKey)
+                .containsExactly("employee");
+    }
+
+    private DeclarationSummary summary(SummaryDimension dimension, String groupKey) {
+        return declarationSummaryRepository.findById(new DeclarationSummary.Key(dimension, groupKey)).orElseThrow();
+    }
+}
@@ -0,0 +1,110 @@
+package nl.quintor.declaration.service;
+
+import nl.quintor.declaration.model.ApprovalLevel;
+import nl.quintor.declaration.model.ApprovalRequest;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.repository.DeclarationRepository;
+import nl.quintor.declaration.repository.DeclarationTombstoneRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "declaration.sync.overlap=0s")
+@ActiveProfiles("test")
+public class DeclarationSyncServiceTest {
+
+    @Autowired
+    private DeclarationSyncService declarationSyncService;
+
+    @Autowired
+    private DeclarationService declarationService;
+
+    @Autowired
+    private DeclarationRepository declarationRepository;
+
+    @Autowired
+    private DeclarationTombstoneRepository tombstoneRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        declarationRepository.deleteAll();
+        tombstoneRepository.deleteAll();
+    }
+
+    @Test
+    public void findChanges_withCursor_shouldReturnChangedAndRemovedDeclarationsOnly() throws InterruptedException {
+        var changed = declarationService.save(Declaration.builder().costs(10.0).employee("employee").build());
+        var moved = declarationService.save(Declaration.builder().costs(5.0).employee("employee").build());
+        var unchanged = declarationService.save(Declaration.builder().costs(1.0).employee("employee").build());
+        var first = declarationSyncService.findChanges("employee", null);
+        // The cursor has millisecond precision, changes in the same millisecond would be sent again
+        Thread.sleep(5);
+
+        changed.setCosts(20.0);
+        declarationService.save(changed);
+        moved.setEmployee("manager");
+        declarationService.save(moved);
+        var second = declarationSyncService.findChanges("employee", first.getCursor());
+
+        assertThat(first.getChanged()).extracting(Declaration::getId).containsExactly(changed.getId(), moved.getId(), unchanged.getId());
+        assertThat(second.getChanged()).extracting(Declaration::getCosts).containsExactly(20.0);
+        assertThat(second.getRemoved()).containsExactly(moved.getId());
+        assertThat(declarationSyncService.findChanges("manager", first.getCursor()).getChanged())
+                .extracting(Declaration::getId).containsExactly(moved.getId());
+    }
+
+    @Test
+    public void findChanges_withoutCursor_shouldReturnDeclarationsThatNeverChanged() {
+        var declaration = declarationService.save(Declaration.builder().costs(10.0).employee("employee").build());
+        // Rows from before changedAt existed
+        jdbcTemplate.update("update declaration set changed_at = 0 where id = ?", declaration.getId());
+
+        var first = declarationSyncService.findChanges("employee", null);
+
+        assertThat(first.getChanged()).extracting(Declaration::getId).containsExactly(declaration.getId());
+        assertThat(declarationSyncService.findChanges(null, null).getChanged()).hasSize(1);
+    }
+
+    @Test
+    public void versionOf_afterApproval_shouldChangeForThatEmployeeOnly() throws InterruptedException {
+        declarationService.save(Declaration.builder().costs(10.0).employee("employee").build());
+        declarationService.save(Declaration.builder().costs(5.0).employee("manager").build());
+        var employeeVersion = declarationSyncService.versionOf("employee");
+        var managerVersion = declarationSyncService.versionOf("manager");
+        var allVersion = declarationSyncService.versionOf(null);
+        // The version has millisecond precision
+        Thread.sleep(5);
+
+        declarationService.approve(ApprovalRequest.builder().level(ApprovalLevel.LOCAL).employee("employee").build());
+
+        assertThat(declarationSyncService.versionOf("employee")).isNotEqualTo(employeeVersion);
+        assertThat(declarationSyncService.versionOf("manager")).isEqualTo(managerVersion);
+        assertThat(declarationSyncService.versionOf(null)).isNotEqualTo(allVersion);
+    }
+
+    @Test
+    public void findChanges_withExpiredCursor_shouldThrowGone() {
+        // Cursor of 1970-01-01T00:00:00.001Z
+        assertThatThrownBy(() -> declarationSyncService.findChanges("employee", "MQ"))
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.GONE));
+    }
+}
@@ -0,0 +1,138 @@
+package nl.quintor.declaration.service;
+
+import nl.quintor.declaration.datasource.ShardDataSourceProperties;
+import nl.quintor.declaration.datasource.ShardRouter;
+import nl.quintor.declaration.model.Declaration;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GroupCommitWriterTest {
+
+    private DeclarationService declarationService = mock(DeclarationService.class);
+    private ShardRouter shardRouter = new ShardRouter(new ShardDataSourceProperties(), mock(PlatformTransactionManager.class));
+    private GroupCommitWriter writer;
+
+    @After
+    public void shutdown() throws InterruptedException {
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void create_withGroupCommitEnabled_shouldWriteConcurrentCreatesTogether() {
+        var ids = new AtomicLong();
+        var batches = new CopyOnWriteArrayList<Integer>();
+        doAnswer(invocation -> {
+            List<Declaration> declarations = invocation.getArgument(0);
+            declarations.forEach(declaration -> declaration.setId(ids.incrementAndGet()));
+            batches.add(declarations.size());
+            return declarations;
+        }).when(declarationService).insertAll(anyList());
+        writer = start(true, 1000);
+
+        var futures = new ArrayList<CompletableFuture<Declaration>>();
+        for (var i = 0; i < 100; i++) {
+            futures.add(writer.create(Declaration.builder().employee("employee").costs(i).build()));
+        }
+
+        assertThat(futures).extracting(future -> future.join().getId()).doesNotContain(0L).doesNotHaveDuplicates();
+        assertThat(batches.stream().mapToInt(Integer::intValue).sum()).isEqualTo(100);
+        assertThat(batches.size()).isLessThan(100);
+        verify(declarationService, never()).save(any());
+    }
+
+    @Test
+    public void create_withFailingBatch_shouldWriteDeclarationsOneByOne() {
+        when(declarationService.insertAll(anyList())).thenThrow(new IllegalStateException("constraint violation"));
+        when(declarationService.save(any())).thenAnswer(invocation -> {
+            Declaration declaration = invocation.getArgument(0);
+            if (declaration.getCosts() < 0) {
+                throw new IllegalArgumentException("negative costs");
+            }
+            declaration.setId(7);
+            return declaration;
+        });
+        writer = start(true, 1000);
+
+        var good = writer.create(Declaration.builder().employee("employee").costs(10).build());
+        var bad = writer.create(Declaration.builder().employee("employee").costs(-1).build());
+
+        assertThat(good.join().getId()).isEqualTo(7);
+        assertThatThrownBy(bad::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void create_withFullQueue_shouldThrowServiceUnavailable() throws InterruptedException {
+        var writing = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return invocation.getArgument(0);
+        }).when(declarationService).insertAll(anyList());
+        writer = new GroupCommitWriter(declarationService, shardRouter, true, 1, Duration.ofMillis(5), 1);
+        writer.start();
+
+        // The writer takes the first one and blocks while inserting it, the second one fills the queue
+        var first = writer.create(Declaration.builder().build());
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        var second = writer.create(Declaration.builder().build());
+        try {
+            assertThatThrownBy(() -> writer.create(Declaration.builder().build()))
+                    .isExactlyInstanceOf(ResponseStatusException.class)
+                    .hasMessageContaining("Too many declarations");
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(first.join()).isNotNull();
+        assertThat(second.join()).isNotNull();
+    }
+
+    @Test
+    public void create_afterStop_shouldThrowServiceUnavailable() throws InterruptedException {
+        writer = start(true, 10);
+        writer.stop();
+
+        assertThatThrownBy(() -> writer.create(Declaration.builder().build()))
+                .isExactlyInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    public void create_withGroupCommitDisabled_shouldSaveRightAway() {
+        var declaration = Declaration.builder().employee("employee").build();
+        when(declarationService.save(declaration)).thenReturn(Declaration.builder().id(3).build());
+        writer = start(false, 10);
+
+        assertThat(writer.create(declaration).getNow(null).getId()).isEqualTo(3);
+    }
+
+    private GroupCommitWriter start(boolean enabled, int queueCapacity) {
+        var groupCommitWriter = new GroupCommitWriter(declarationService, shardRouter, enabled, 50, Duration.ofMillis(20), queueCapacity);
+        groupCommitWriter.start();
+        return groupCommitWriter;
+    }
+}
@@ -0,0 +1,66 @@
+package nl.quintor.declaration.service;
+
+import nl.quintor.declaration.storage.BlobStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class ImageBlobMigrationTest {
+
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+
+    @Autowired
+    private ImageBlobMigration imageBlobMigration;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void addFileColumn() {
+        // The column of images stored before the blob store, the entity doesn't map it anymore
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("alter table image add column file blob");
+    }
+
+    @After
+    public void dropFileColumn() {
+        jdbcTemplate.execute("alter table image drop column file");
+    }
+
+    @Test
+    public void migrate_withStoredFile_shouldMoveItToBlobStore() throws Exception {
+        jdbcTemplate.update("insert into image (employee, file_name, size, file) values ('employee', 'receipt', 0, ?)",
+                (Object) PNG_HEADER);
+        var id = jdbcTemplate.queryForObject("select id from image where file is not null", Long.class);
+
+        assertThat(imageBlobMigration.migrate()).isEqualTo(1);
+
+        var row = jdbcTemplate.queryForMap("select content_key, size, content_type, file from image where id = ?", id);
+        assertThat(row.get("file")).isNull();
+        assertThat(row.get("size")).isEqualTo((long) PNG_HEADER.length);
+        assertThat(row.get("content_type")).isEqualTo(MediaType.IMAGE_PNG_VALUE);
+        try (var content = blobStore.open((String) row.get("content_key"))) {
+            assertThat(content.readAllBytes()).isEqualTo(PNG_HEADER);
+        }
+        assertThat(imageBlobMigration.migrate()).isZero();
+    }
+}
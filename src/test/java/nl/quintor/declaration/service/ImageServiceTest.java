@@ -0,0 +1,97 @@
+package nl.quintor.declaration.service;
+
+import nl.quintor.declaration.config.CacheConfig;
+import nl.quintor.declaration.model.Image;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "image.upload.max-size=16B")
+@ActiveProfiles("test")
+public class ImageServiceTest {
+
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Test
+    public void save_withStreamedContent_shouldStoreContentAndMetadata() throws Exception {
+        var image = Image.builder().employee("employee").fileName("receipt").build();
+
+        var saved = imageService.save(image, new ByteArrayInputStream(PNG_HEADER));
+
+        assertThat(saved.getId()).isPositive();
+        assertThat(saved.getSize()).isEqualTo(PNG_HEADER.length);
+        assertThat(saved.getContentType()).isEqualTo(MediaType.IMAGE_PNG_VALUE);
+        assertThat(saved.getContentKey()).hasSize(64);
+
+        var output = new ByteArrayOutputStream();
+        imageService.transferContent(saved, 0, saved.getSize(), output);
+        assertThat(output.toByteArray()).isEqualTo(PNG_HEADER);
+    }
+
+    @Test
+    public void save_withoutFile_shouldNotTakeContentFields() {
+        var saved = imageService.save(Image.builder().employee("employee").fileName("receipt")
+                .contentKey("forged").size(42).contentType(MediaType.IMAGE_PNG_VALUE).build());
+
+        assertThat(saved.getContentKey()).isNull();
+        assertThat(saved.getSize()).isZero();
+        assertThat(saved.getContentType()).isNull();
+    }
+
+    @Test
+    public void save_withoutFileForExistingImage_shouldKeepStoredContent() {
+        var stored = imageService.save(Image.builder().employee("employee").fileName("receipt").build(),
+                new ByteArrayInputStream(PNG_HEADER));
+
+        var saved = imageService.save(Image.builder().id(stored.getId()).employee("employee").name("renamed")
+                .contentKey("forged").size(42).build());
+
+        assertThat(saved.getName()).isEqualTo("renamed");
+        assertThat(saved.getContentKey()).isEqualTo(stored.getContentKey());
+        assertThat(saved.getSize()).isEqualTo(PNG_HEADER.length);
+        assertThat(saved.getContentType()).isEqualTo(MediaType.IMAGE_PNG_VALUE);
+    }
+
+    @Test
+    public void findOwnerById_withExistingImage_shouldReturnAndCacheOwner() {
+        var saved = imageService.save(Image.builder().employee("owner").fileName("receipt").build());
+
+        assertThat(imageService.findOwnerById(saved.getId())).contains("owner");
+        assertThat(cacheManager.getCache(CacheConfig.IMAGE_OWNERS).get(saved.getId(), String.class)).isEqualTo("owner");
+    }
+
+    @Test
+    public void findOwnerById_withUnknownImage_shouldNotCacheAbsence() {
+        assertThat(imageService.findOwnerById(999_999)).isEmpty();
+        assertThat(cacheManager.getCache(CacheConfig.IMAGE_OWNERS).get(999_999L)).isNull();
+    }
+
+    @Test
+    public void save_withContentOverMaxSize_shouldThrowPayloadTooLarge() {
+        var image = Image.builder().employee("employee").fileName("receipt.jpg").build();
+
+        assertThatThrownBy(() -> imageService.save(image, new ByteArrayInputStream(new byte[17])))
+                .isExactlyInstanceOf(ResponseStatusException.class)
+                .matches(e -> ((ResponseStatusException) e).getStatus() == HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+}
@@ -0,0 +1,88 @@
+package nl.quintor.declaration.service;
+
+import nl.quintor.declaration.model.Image;
+import nl.quintor.declaration.storage.BlobStore;
+import nl.quintor.declaration.storage.DerivativeCache;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class ImageVariantServiceTest {
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private DerivativeCache derivativeCache;
+
+    @Test
+    public void findVariant_withPngImage_shouldReturnDownscaledPng() throws Exception {
+        var image = saveImage(400, 200, "png");
+
+        var variant = imageVariantService.findVariant(image, 100);
+        var thumbnail = ImageIO.read(new ByteArrayInputStream(variant.getContent()));
+
+        assertThat(variant.getContentType()).isEqualTo(MediaType.IMAGE_PNG_VALUE);
+        assertThat(thumbnail.getWidth()).isEqualTo(100);
+        assertThat(thumbnail.getHeight()).isEqualTo(50);
+    }
+
+    @Test
+    public void findVariant_withJpegImageRequestedTwice_shouldServeSecondFromCache() throws Exception {
+        var image = saveImage(300, 300, "jpg");
+
+        var first = imageVariantService.findVariant(image, 30);
+        var second = imageVariantService.findVariant(image, 30);
+
+        assertThat(first.getContentType()).isEqualTo(MediaType.IMAGE_JPEG_VALUE);
+        assertThat(second.getContent()).isSameAs(first.getContent());
+    }
+
+    @Test
+    public void findVariant_withWidthOutOfBounds_shouldThrowException() throws Exception {
+        var image = saveImage(100, 100, "png");
+
+        assertThatThrownBy(() -> imageVariantService.findVariant(image, 5000))
+                .isExactlyInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    public void findVariant_withMorePixelsThanAllowed_shouldRefuseToDecode() throws Exception {
+        var image = saveImage(400, 300, "png");
+        var limited = new ImageVariantService(blobStore, derivativeCache, 1024, 100_000);
+
+        assertThatThrownBy(() -> limited.findVariant(image, 100))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+    }
+
+    private Image saveImage(int width, int height, String format) throws Exception {
+        var output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, output);
+        var image = Image.builder().employee("employee").fileName("receipt." + format).build();
+        return imageService.save(image, new ByteArrayInputStream(output.toByteArray()));
+    }
+}
@@ -0,0 +1,191 @@
+package nl.quintor.declaration.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.quintor.declaration.datasource.ShardContext;
+import nl.quintor.declaration.datasource.ShardRouter;
+import nl.quintor.declaration.model.ApprovalLevel;
+import nl.quintor.declaration.model.ApprovalRequest;
+import nl.quintor.declaration.model.BatchItemResult;
+import nl.quintor.declaration.model.Declaration;
+import nl.quintor.declaration.model.DeclarationFilter;
+import nl.quintor.declaration.model.Image;
+import nl.quintor.declaration.model.SummaryDimension;
+import nl.quintor.declaration.repository.DeclarationRepository;
+import nl.quintor.declaration.repository.DeclarationSummaryRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "datasource.shards[0].name=shard-a",
+        "datasource.shards[0].url=jdbc:h2:mem:shard_a;DB_CLOSE_DELAY=-1",
+        "datasource.shards[0].username=sa",
+        "datasource.shards[1].name=shard-b",
+        "datasource.shards[1].url=jdbc:h2:mem:shard_b;DB_CLOSE_DELAY=-1",
+        "datasource.shards[1].username=sa",
+        "datasource.instances.instance-b=shard-b"
+})
+@ActiveProfiles("test")
+public class ShardedDeclarationServiceTest {
+
+    @Autowired
+    private DeclarationService declarationService;
+
+    @Autowired
+    private DeclarationSummaryService declarationSummaryService;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private DeclarationRepository declarationRepository;
+
+    @Autowired
+    private DeclarationSummaryRepository declarationSummaryRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Before
+    public void init() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        for (var shard : shardRouter.getShards()) {
+            ShardContext.call(shard, () -> {
+                declarationRepository.deleteAll();
+                declarationSummaryRepository.deleteAll();
+                return null;
+            });
+        }
+    }
+
+    @Test
+    public void save_withInstanceOfSecondShard_shouldStoreItThereAndFindItFromEverywhere() {
+        var first = declarationService.save(declaration("instance-a", 10.0));
+        var second = declarationService.save(declaration("instance-b", 5.0));
+
+        assertThat(countOn("shard-a")).isEqualTo(1);
+        assertThat(countOn("shard-b")).isEqualTo(1);
+        assertThat(first.getId()).isNotEqualTo(second.getId());
+        assertThat(declarationService.findById(second.getId())).isPresent();
+        assertThat(declarationService.findAll()).extracting(Declaration::getId).containsExactly(first.getId(), second.getId());
+        assertThat(declarationService.findAllByEmployee("employee")).hasSize(2);
+    }
+
+    @Test
+    public void findPage_overShards_shouldMergeThemInIdOrder() {
+        for (var i = 0; i < 3; i++) {
+            declarationService.save(declaration("instance-a", i));
+            declarationService.save(declaration("instance-b", i));
+        }
+        var ids = declarationService.findAll().stream().map(Declaration::getId).collect(Collectors.toList());
+
+        var first = declarationService.findPage(new DeclarationFilter(), null, 4);
+        var second = declarationService.findPage(new DeclarationFilter(), first.getNextCursor(), 4);
+
+        assertThat(first.getItems()).extracting(Declaration::getId).containsExactlyElementsOf(ids.subList(0, 4));
+        assertThat(second.getItems()).extracting(Declaration::getId).containsExactlyElementsOf(ids.subList(4, 6));
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void findAll_withSummariesOnBothShards_shouldAddThemUp() {
+        declarationService.save(declaration("instance-a", 10.0));
+        declarationService.save(declaration("instance-b", 5.0));
+        declarationService.approve(ApprovalRequest.builder().level(ApprovalLevel.LOCAL).employee("employee").build());
+
+        var summaries = declarationSummaryService.findAll(SummaryDimension.EMPLOYEE);
+
+        assertThat(summaries).hasSize(1);
+        assertThat(summaries.get(0).getDeclarationCount()).isEqualTo(2);
+        assertThat(summaries.get(0).getTotalCosts()).isEqualTo(15.0);
+        assertThat(summaries.get(0).getApprovedLocalCount()).isEqualTo(2);
+        assertThat(declarationSummaryService.findAll(SummaryDimension.INSTANCE)).hasSize(2);
+    }
+
+    @Test
+    public void patch_withInstanceOnOtherShard_shouldThrowConflict() throws Exception {
+        var saved = declarationService.save(declaration("instance-a", 10.0));
+        var patch = objectMapper.readTree("{\"version\": 0, \"instanceId\": \"instance-b\"}");
+
+        assertThatThrownBy(() -> declarationService.patch(saved.getId(), patch, new TestingAuthenticationToken("manager", "", "ROLE_MANAGER")))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("another shard");
+    }
+
+    @Test
+    public void save_withImageOfSecondShard_shouldFindItById() {
+        var image = imageService.save(Image.builder().employee("employee").name("receipt").instanceId("instance-b").build());
+
+        assertThat(imageService.findById(image.getId())).map(Image::getInstanceId).contains("instance-b");
+        assertThat(imageService.findOwnerById(image.getId())).contains("employee");
+    }
+
+    @Test
+    public void createAll_withFailingShard_shouldReportOnlyItsDeclarationsAsFailed() {
+        var manager = new TestingAuthenticationToken("manager", "", "ROLE_MANAGER");
+
+        var results = withBrokenSecondShard(() -> declarationService.createAll(
+                List.of(declaration("instance-a", 10.0), declaration("instance-b", 5.0)), manager));
+
+        assertThat(results).extracting(BatchItemResult::getStatus).containsExactly(201, 500);
+        assertThat(countOn("shard-a")).isEqualTo(1);
+        assertThat(countOn("shard-b")).isEqualTo(0);
+    }
+
+    @Test
+    public void approve_withFailingShard_shouldApproveOthersAndReportIt() {
+        var first = declarationService.save(declaration("instance-a", 10.0));
+        declarationService.save(declaration("instance-b", 5.0));
+        var request = ApprovalRequest.builder().level(ApprovalLevel.LOCAL).employee("employee").build();
+
+        var result = withBrokenSecondShard(() -> declarationService.approve(request));
+
+        assertThat(result.getIds()).containsExactly(first.getId());
+        assertThat(result.getFailedShards()).containsExactly("shard-b");
+        assertThat(declarationService.approve(request).getIds()).hasSize(1);
+    }
+
+    /**
+     * Writes to the second shard fail while its summary table is gone.
+     */
+    private <T> T withBrokenSecondShard(Supplier<T> work) {
+        var shardB = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:shard_b;DB_CLOSE_DELAY=-1", "sa", ""));
+        shardB.execute("alter table declaration_summary rename to declaration_summary_gone");
+        try {
+            return work.get();
+        } finally {
+            shardB.execute("alter table declaration_summary_gone rename to declaration_summary");
+        }
+    }
+
+    private long countOn(String shard) {
+        return ShardContext.call(shard, declarationRepository::count);
+    }
+
+    private static Declaration declaration(String instanceId, double costs) {
+        return Declaration.builder().employee("employee").instanceId(instanceId).costs(costs).build();
+    }
+}
@@ -0,0 +1,68 @@
+package nl.quintor.declaration.storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DerivativeCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void get_afterMemoryBudgetExceeded_shouldFallBackOnDisk() {
+        var cache = new DerivativeCache(folder.getRoot().toPath(), 10, 1000);
+
+        cache.put("a", new byte[6]);
+        var first = cache.get("a").get();
+        cache.put("b", new byte[6]);
+
+        var fromDisk = cache.get("a").get();
+
+        assertThat(fromDisk).hasSize(6);
+        assertThat(fromDisk).isNotSameAs(first);
+    }
+
+    @Test
+    public void put_overDiskBudget_shouldEvictLeastRecentlyUsedFiles() throws Exception {
+        var directory = folder.getRoot().toPath();
+        var cache = new DerivativeCache(directory, 0, 25);
+
+        cache.put("old", new byte[10]);
+        cache.put("recent", new byte[10]);
+        Files.setLastModifiedTime(directory.resolve("old"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(directory.resolve("recent"), FileTime.fromMillis(2000));
+        cache.put("new", new byte[10]);
+
+        assertThat(cache.get("old")).isEmpty();
+        assertThat(cache.get("recent")).isPresent();
+        assertThat(cache.get("new")).isPresent();
+    }
+
+    @Test
+    public void put_ofCachedKey_shouldOnlyCountItOnce() {
+        var cache = new DerivativeCache(folder.getRoot().toPath(), 0, 25);
+
+        cache.put("a", new byte[10]);
+        cache.put("a", new byte[10]);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+
+        assertThat(cache.get("a")).isPresent();
+        assertThat(cache.get("b")).isPresent();
+    }
+
+    @Test
+    public void get_withKeyOutsideDirectory_shouldThrowException() {
+        var cache = new DerivativeCache(folder.getRoot().toPath(), 10, 10);
+
+        assertThatThrownBy(() -> cache.get("../secret"))
+                .isExactlyInstanceOf(IllegalArgumentException.class);
+    }
+}
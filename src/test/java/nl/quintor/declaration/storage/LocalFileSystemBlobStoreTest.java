@@ -0,0 +1,101 @@
+package nl.quintor.declaration.storage;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LocalFileSystemBlobStoreTest {
+
+    // SHA-256 of "hello"
+    private static final String HELLO_KEY = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalFileSystemBlobStore blobStore;
+
+    @Before
+    public void init() {
+        blobStore = new LocalFileSystemBlobStore(folder.getRoot().toPath());
+    }
+
+    @Test
+    public void put_withContent_shouldStoreUnderSha256WithFanOut() throws Exception {
+        var blob = blobStore.put(new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(blob.getKey()).isEqualTo(HELLO_KEY);
+        assertThat(blob.getSize()).isEqualTo(5);
+        assertThat(Files.exists(folder.getRoot().toPath().resolve("2c").resolve("f2").resolve(HELLO_KEY))).isTrue();
+        try (var content = blobStore.open(blob.getKey())) {
+            assertThat(new String(content.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("hello");
+        }
+    }
+
+    @Test
+    public void put_withSameContentTwice_shouldStoreItOnce() throws Exception {
+        var first = blobStore.put(new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+        var second = blobStore.put(new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(second).isEqualTo(first);
+        assertThat(blobStore.exists(HELLO_KEY)).isTrue();
+        try (var incoming = Files.list(folder.getRoot().toPath().resolve("incoming"))) {
+            assertThat(incoming).isEmpty();
+        }
+    }
+
+    @Test
+    public void transferTo_withPartOfBlob_shouldCopyOnlyThatPart() throws Exception {
+        var blob = blobStore.put(new ByteArrayInputStream("hello world".getBytes(StandardCharsets.UTF_8)));
+        var output = new ByteArrayOutputStream();
+
+        blobStore.transferTo(blob.getKey(), 6, 5, Channels.newChannel(output));
+
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo("world");
+    }
+
+    @Test
+    public void transferTo_withDefaultStreamingImplementation_shouldCopyOnlyThatPart() throws Exception {
+        var blob = blobStore.put(new ByteArrayInputStream("hello world".getBytes(StandardCharsets.UTF_8)));
+        BlobStore streamingOnly = new BlobStore() {
+            @Override
+            public StoredBlob put(InputStream content) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public InputStream open(String key) throws IOException {
+                return blobStore.open(key);
+            }
+
+            @Override
+            public boolean exists(String key) {
+                return blobStore.exists(key);
+            }
+        };
+        var output = new ByteArrayOutputStream();
+
+        streamingOnly.transferTo(blob.getKey(), 6, 5, Channels.newChannel(output));
+
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo("world");
+    }
+
+    @Test
+    public void open_withInvalidKey_shouldThrowException() {
+        assertThatThrownBy(() -> blobStore.open("../../etc/passwd"))
+                .isInstanceOf(NoSuchFileException.class);
+        assertThat(blobStore.exists("../../etc/passwd")).isFalse();
+    }
+}